@@ -2,6 +2,7 @@ package org.moon.figura;
 
 import com.mojang.blaze3d.vertex.PoseStack;
 import net.fabricmc.api.ClientModInitializer;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientLifecycleEvents;
 import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
 import net.fabricmc.fabric.api.client.rendering.v1.HudRenderCallback;
 import net.fabricmc.fabric.api.client.rendering.v1.WorldRenderContext;
@@ -30,8 +31,10 @@ import org.moon.figura.lua.FiguraAPIManager;
 import org.moon.figura.lua.FiguraLuaPrinter;
 import org.moon.figura.lua.docs.FiguraDocsManager;
 import org.moon.figura.mixin.SkullBlockEntityAccessor;
+import org.moon.figura.model.rendering.texture.FiguraTextureSet;
 import org.moon.figura.trust.TrustManager;
 import org.moon.figura.utils.ColorUtils;
+import org.moon.figura.utils.LuaUtils;
 import org.moon.figura.utils.TextUtils;
 import org.moon.figura.utils.Version;
 import org.slf4j.Logger;
@@ -69,16 +72,20 @@ public class FiguraMod implements ClientModInitializer {
 
         //register events
         ClientTickEvents.START_CLIENT_TICK.register(FiguraMod::tick);
+        ClientLifecycleEvents.CLIENT_STOPPING.register(client -> CacheAvatarLoader.flush());
         WorldRenderEvents.START.register(levelRenderer -> AvatarManager.onWorldRender(levelRenderer.tickDelta()));
         WorldRenderEvents.END.register(levelRenderer -> AvatarManager.afterWorldRender(levelRenderer.tickDelta()));
         WorldRenderEvents.AFTER_ENTITIES.register(FiguraMod::renderFirstPersonWorldParts);
         HudRenderCallback.EVENT.register(FiguraMod::hudRender);
         ResourceManagerHelper.get(PackType.CLIENT_RESOURCES).registerReloadListener(LocalAvatarLoader.AVATAR_LISTENER);
+        ResourceManagerHelper.get(PackType.CLIENT_RESOURCES).registerReloadListener(FiguraTextureSet.RESOURCE_LISTENER);
+        ResourceManagerHelper.get(PackType.CLIENT_RESOURCES).registerReloadListener(LuaUtils.PARSE_CACHE_LISTENER);
     }
 
     private static void tick(Minecraft client) {
         NetworkStuff.tick();
         LocalAvatarLoader.tickWatchedKey();
+        CacheAvatarLoader.tick();
         AvatarManager.tickLoadedAvatars();
         FiguraLuaPrinter.printChatFromQueue();
         ticks++;
@@ -158,6 +165,18 @@ public class FiguraMod implements ClientModInitializer {
             LOGGER.info(message.getString());
     }
 
+    /**
+     * Runs the task on the client thread, right away if already on it, otherwise on the next frame.
+     * @param task - the task to run
+     */
+    public static void runOnClientThread(Runnable task) {
+        Minecraft client = Minecraft.getInstance();
+        if (client.isSameThread())
+            task.run();
+        else
+            client.execute(task);
+    }
+
     /**
      * Converts a player name to UUID using minecraft internal functions.
      * @param playerName - the player name
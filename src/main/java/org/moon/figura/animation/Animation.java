@@ -2,6 +2,9 @@ package org.moon.figura.animation;
 
 import com.mojang.datafixers.util.Pair;
 import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaFunction;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.lib.ZeroArgFunction;
 import org.moon.figura.avatar.Avatar;
 import org.moon.figura.lua.LuaNotNil;
 import org.moon.figura.lua.LuaWhitelist;
@@ -31,6 +34,14 @@ public class Animation {
 
     protected final List<Map.Entry<FiguraModelPart, List<Animation.AnimationChannel>>> animationParts = new ArrayList<>();
     private final Map<Float, String> codeFrames = new HashMap<>();
+    private final Map<Float, LuaFunction> compiledCode = new HashMap<>();
+    //marks the chunks that failed to compile, so they are not compiled again on every run
+    private static final LuaFunction COMPILE_FAILED = new ZeroArgFunction() {
+        @Override
+        public LuaValue call() {
+            return NIL;
+        }
+    };
 
     // -- player variables -- //
 
@@ -80,6 +91,7 @@ public class Animation {
         }
 
         entry.getValue().add(anim);
+        part.hasAnimations = true;
         this.animationParts.sort(Map.Entry.comparingByKey());
     }
 
@@ -123,10 +135,36 @@ public class Animation {
             minTime = offset;
         }
 
-        for (Float codeTime : codeFrames.keySet()) {
-            if (codeTime >= minTime && codeTime < maxTime)
-                owner.run(Pair.of("animations." + modelName + "." + name, codeFrames.get(codeTime)), owner.tick, this);
+        for (Map.Entry<Float, String> entry : codeFrames.entrySet()) {
+            float codeTime = entry.getKey();
+            if (codeTime < minTime || codeTime >= maxTime)
+                continue;
+
+            LuaFunction code = getCompiledCode(entry.getKey(), entry.getValue());
+            //no arguments, as the chunks never received any when run from source
+            if (code != null)
+                owner.run(code, owner.tick);
+            else
+                owner.run(Pair.of(getChunkName(), entry.getValue()), owner.tick);
+        }
+    }
+
+    private LuaFunction getCompiledCode(Float time, String src) {
+        LuaFunction code = compiledCode.get(time);
+        if (code == null && owner.luaRuntime != null) {
+            try {
+                code = owner.luaRuntime.load(getChunkName(), src);
+            } catch (LuaError ignored) {
+                //the error is reported when running it from source
+                code = COMPILE_FAILED;
+            }
+            compiledCode.put(time, code);
         }
+        return code == COMPILE_FAILED ? null : code;
+    }
+
+    private String getChunkName() {
+        return "animations." + modelName + "." + name;
     }
 
     public static Map<String, Map<String, Animation>> getTableForAnimations(Avatar avatar) {
@@ -219,7 +257,12 @@ public class Animation {
             value = "animation.add_code"
     )
     public Animation addCode(float time, @LuaNotNil String data) {
-        codeFrames.put(Math.max(time, 0f), data);
+        float codeTime = Math.max(time, 0f);
+        codeFrames.put(codeTime, data);
+
+        //keyframes loaded with the avatar are compiled on their first run instead, as there is no script yet
+        compiledCode.remove(codeTime);
+        getCompiledCode(codeTime, data);
         return this;
     }
 
@@ -30,24 +30,27 @@ import org.moon.figura.FiguraMod;
 import org.moon.figura.animation.Animation;
 import org.moon.figura.animation.AnimationPlayer;
 import org.moon.figura.config.Config;
+import org.moon.figura.lua.CompiledScriptCache;
 import org.moon.figura.lua.FiguraLuaPrinter;
 import org.moon.figura.lua.FiguraLuaRuntime;
+import org.moon.figura.lua.api.event.EventsAPI;
 import org.moon.figura.lua.api.event.LuaEvent;
 import org.moon.figura.lua.api.particle.ParticleAPI;
 import org.moon.figura.lua.api.ping.PingArg;
 import org.moon.figura.lua.api.ping.PingFunction;
 import org.moon.figura.lua.api.sound.SoundAPI;
 import org.moon.figura.lua.api.world.ItemStackAPI;
-import org.moon.figura.math.matrix.FiguraMat3;
 import org.moon.figura.math.matrix.FiguraMat4;
 import org.moon.figura.math.vector.FiguraVec3;
 import org.moon.figura.math.vector.FiguraVec4;
 import org.moon.figura.model.ParentType;
-import org.moon.figura.model.PartCustomization;
 import org.moon.figura.model.rendering.AvatarRenderer;
 import org.moon.figura.model.rendering.ImmediateAvatarRenderer;
 import org.moon.figura.model.rendering.PartFilterScheme;
+import org.moon.figura.model.rendering.PivotTransformBuffer;
+import org.moon.figura.model.rendering.RetainedAvatarRenderer;
 import org.moon.figura.model.rendering.texture.EntityRenderMode;
+import org.moon.figura.model.rendering.texture.FiguraTexture;
 import org.moon.figura.trust.Trust;
 import org.moon.figura.trust.TrustContainer;
 import org.moon.figura.trust.TrustManager;
@@ -61,7 +64,11 @@ import java.io.ByteArrayOutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
@@ -70,12 +77,19 @@ import java.util.function.Supplier;
 //and also related to the owner, like trust settings
 public class Avatar {
 
-    private static CompletableFuture<Void> tasks;
+    //decodes the avatars data, one load stage per task
+    private static final ForkJoinPool LOAD_POOL = new ForkJoinPool(Math.max(Runtime.getRuntime().availableProcessors() - 1, 1), pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("Figura Avatar Load " + thread.getPoolIndex());
+        return thread;
+    }, null, false);
 
     //properties
     public final UUID owner;
     public CompoundTag nbt;
     public boolean loaded = true;
+    //bumped on every load and clean, so a load that finishes after being replaced or discarded is thrown away
+    private final AtomicInteger loadGeneration = new AtomicInteger();
     public final boolean isHost;
 
     //metadata
@@ -84,6 +98,8 @@ public class Avatar {
     public Version version;
     public String id;
     public int fileSize;
+    public final Map<String, Long> loadTimes = new ConcurrentHashMap<>(); //stage -> milliseconds
+    private AvatarDataCache.Data sharedData;
     public String color;
     public boolean minify;
 
@@ -93,6 +109,9 @@ public class Avatar {
     public AvatarRenderer renderer;
     public FiguraLuaRuntime luaRuntime;
     public EntityRenderMode renderMode = EntityRenderMode.OTHER;
+    public LOD lod = LOD.FULL;
+    private int renderFrame;
+    public AvatarProfiler profiler;
 
     public final TrustContainer.PlayerContainer trust;
 
@@ -128,59 +147,85 @@ public class Avatar {
     }
 
     public void load(CompoundTag nbt) {
-        Runnable toRun = () -> {
-            this.nbt = nbt;
-            loaded = false;
-        };
-
-        if (tasks == null || tasks.isDone()) {
-            tasks = CompletableFuture.runAsync(toRun);
-        } else {
-            tasks.thenRun(toRun);
-        }
+        load(nbt, -1);
+    }
 
-        tasks.join();
+    /**
+     * Loads the avatar reusing the data already decoded for other avatars with the same hash
+     */
+    public void load(AvatarDataCache.Data data) {
+        this.sharedData = data;
+        load(data.nbt, data.compressedSize);
+    }
 
+    /**
+     * @param compressedSize The size of the compressed nbt, when known, otherwise -1 to compress it again to get its size
+     */
+    public void load(CompoundTag nbt, int compressedSize) {
+        int generation = loadGeneration.incrementAndGet();
+        this.nbt = nbt;
         if (nbt == null) {
             loaded = true;
             return;
         }
 
-        tasks.thenRun(() -> {
+        loaded = false;
+        loadTimes.clear();
+        long start = System.nanoTime();
+
+        //independent stages are decoded at the same time
+        CompletableFuture<Void> metadataStage = runStage("metadata", () -> loadMetadata(compressedSize));
+        CompletableFuture<Void> animationsStage = runStage("animations", this::loadAnimations);
+        CompletableFuture<Map<String, FiguraTexture>> texturesStage = supplyStage("textures", this::loadTextures);
+        CompletableFuture<Map<String, SoundBuffer>> soundsStage = supplyStage("sounds", this::loadCustomSounds);
+        CompletableFuture<Void> scriptsStage = runStage("scripts", this::compileScripts);
+
+        //models need both the animations and the textures
+        CompletableFuture<AvatarRenderer> modelsStage = animationsStage.thenCombineAsync(texturesStage, (v, textures) -> timed("models", () -> createRenderer(textures)), LOAD_POOL);
+
+        //the runtime is created on the client thread, the textures are uploaded there once rendered
+        CompletableFuture.allOf(metadataStage, soundsStage, scriptsStage, modelsStage).whenComplete((v, throwable) -> FiguraMod.runOnClientThread(() -> {
+            //a newer load or a clean happened meanwhile, so nothing built here is going to be used
+            if (generation != loadGeneration.get()) {
+                discardStages(texturesStage, soundsStage, modelsStage);
+                return;
+            }
+
             try {
-                //metadata
-                CompoundTag metadata = nbt.getCompound("metadata");
-                name = metadata.getString("name");
-                authors = metadata.getString("authors");
-                version = new Version(metadata.getString("ver"));
-                if (metadata.contains("id"))
-                    id = metadata.getString("id");
-                if (metadata.contains("color"))
-                    color = metadata.getString("color");
-                if (metadata.contains("minify"))
-                    minify = metadata.getBoolean("minify");
-                fileSize = getFileSize();
-                versionStatus = version.compareTo(FiguraMod.VERSION);
-                if (entityName.isBlank())
-                    entityName = name;
-
-                //animations and models
-                loadAnimations();
-                renderer = new ImmediateAvatarRenderer(this);
-
-                //sounds and script
-                loadCustomSounds();
-                createLuaRuntime();
-            } catch (Exception e) {
+                if (throwable != null)
+                    throw throwable;
+
+                renderer = modelsStage.join();
+                customSounds.putAll(soundsStage.join());
+                timed("runtime", () -> {
+                    createLuaRuntime();
+                    return null;
+                });
+            } catch (Throwable e) {
                 FiguraMod.LOGGER.error("", e);
+                if (renderer == null)
+                    discardStages(texturesStage, soundsStage, modelsStage);
                 clean();
                 this.nbt = null;
                 this.renderer = null;
                 this.luaRuntime = null;
             }
 
+            loadTimes.put("total", (System.nanoTime() - start) / 1_000_000L);
             loaded = true;
+        }));
+    }
+
+    //frees whatever the stages of a load managed to build
+    private static void discardStages(CompletableFuture<Map<String, FiguraTexture>> texturesStage, CompletableFuture<Map<String, SoundBuffer>> soundsStage, CompletableFuture<AvatarRenderer> modelsStage) {
+        //the renderer owns the textures once created, otherwise they might still be decoding
+        modelsStage.whenComplete((renderer, e) -> {
+            if (renderer != null)
+                renderer.invalidate();
+            else
+                texturesStage.thenAccept(textures -> textures.values().forEach(FiguraTexture::close));
         });
+        soundsStage.thenAccept(sounds -> sounds.values().forEach(SoundBuffer::releaseAlBuffer));
     }
 
     private void checkUser() {
@@ -188,14 +233,33 @@ public class Avatar {
             Entity entity = EntityUtils.getEntityByUUID(owner);
             if (entity != null) {
                 luaRuntime.setUser(entity);
-                run("ENTITY_INIT", init.post());
+                run(EventsAPI.Type.ENTITY_INIT, init.post());
+
+                //parts the script did not reach until now can be merged together
+                if (renderer != null)
+                    renderer.bakeStaticParts();
             }
         }
     }
 
     public void tick() {
+        if (prepareTick())
+            runTickEvents();
+    }
+
+    /**
+     * Client thread part of the tick
+     * @return if the tick events should run
+     */
+    public boolean prepareTick() {
+        //save finished profiles
+        if (profiler != null && profiler.isDone()) {
+            profiler.save();
+            profiler = null;
+        }
+
         if (scriptError || luaRuntime == null || !loaded)
-            return;
+            return false;
 
         checkUser();
 
@@ -207,9 +271,13 @@ public class Avatar {
         soundsRemaining.set(trust.get(Trust.SOUNDS));
         soundsRemaining.tick();
 
-        //call events
+        return true;
+    }
+
+    //may run outside the client thread, see AvatarManager.tickLoadedAvatars()
+    public void runTickEvents() {
         worldTick.reset(trust.get(Trust.WORLD_TICK_INST));
-        run("WORLD_TICK", worldTick);
+        run(EventsAPI.Type.WORLD_TICK, worldTick);
 
         tick.reset(trust.get(Trust.TICK_INST));
         tickEvent();
@@ -217,13 +285,14 @@ public class Avatar {
 
     public void render(float delta) {
         complexity.reset(trust.get(Trust.COMPLEXITY));
+        renderFrame = (renderFrame + 1) % LOD.getEventInterval();
 
         if (scriptError || luaRuntime == null || !loaded)
             return;
 
         render.reset(trust.get(Trust.RENDER_INST));
         worldRender.reset(trust.get(Trust.WORLD_RENDER_INST));
-        run("WORLD_RENDER", worldRender, delta);
+        run(EventsAPI.Type.WORLD_RENDER, worldRender, delta);
     }
 
     public void runPing(int id, byte[] data) {
@@ -242,85 +311,136 @@ public class Avatar {
         });
     }
 
+    // -- event running -- //
+
+    public Varargs run(EventsAPI.Type type, Instructions limit) {
+        return hasListeners(type, limit) ? execute(type, limit, LuaValue.NONE) : null;
+    }
+
+    public Varargs run(EventsAPI.Type type, Instructions limit, float delta) {
+        return hasListeners(type, limit) ? execute(type, limit, LuaValue.valueOf(delta)) : null;
+    }
+
+    public Varargs run(EventsAPI.Type type, Instructions limit, float delta, EntityRenderMode mode) {
+        return hasListeners(type, limit) ? execute(type, limit, LuaValue.varargsOf(LuaValue.valueOf(delta), mode.luaName)) : null;
+    }
+
+    public Varargs run(EventsAPI.Type type, Instructions limit, Object... args) {
+        return hasListeners(type, limit) ? run((Object) type, limit, args) : null;
+    }
+
     public Varargs run(Object toRun, Instructions limit, Object... args) {
-        //create event
-        Supplier<Varargs> ev = () -> {
-            if (scriptError || luaRuntime == null || !loaded)
-                return null;
+        if (scriptError || luaRuntime == null || !loaded) {
+            flushEvents();
+            return null;
+        }
 
-            //parse args
-            LuaValue[] values = new LuaValue[args.length];
-            for (int i = 0; i < values.length; i++)
-                values[i] = luaRuntime.typeManager.javaToLua(args[i]).arg1();
+        //parse args
+        LuaValue[] values = new LuaValue[args.length];
+        for (int i = 0; i < values.length; i++)
+            values[i] = luaRuntime.typeManager.javaToLua(args[i]).arg1();
 
-            Varargs val = LuaValue.varargsOf(values);
+        return execute(toRun, limit, LuaValue.varargsOf(values));
+    }
 
-            //instructions limit
-            luaRuntime.setInstructionLimit(limit.remaining);
+    private boolean hasListeners(EventsAPI.Type type, Instructions limit) {
+        //run anything waiting on the queue first, like the script init or pings, as they may register listeners
+        flushEvents();
 
-            //get and call event
-            try {
-                Varargs ret;
-                if (toRun instanceof LuaEvent event)
-                    ret = event.call(val);
-                else if (toRun instanceof String event)
-                    ret = luaRuntime.events.__index(event).call(val);
-                else if (toRun instanceof LuaFunction func)
-                    ret = func.invoke(val);
-                else if (toRun instanceof Pair<?, ?> pair)
-                    ret = luaRuntime.run(pair.getFirst().toString(), pair.getSecond().toString());
-                else
-                    throw new IllegalArgumentException("Invalid type to run!");
-
-                limit.use(luaRuntime.getInstructions());
-                return ret;
-            } catch (Exception | StackOverflowError e) {
-                if (luaRuntime != null)
-                    luaRuntime.error(e);
-            }
+        FiguraLuaRuntime runtime = luaRuntime;
+        if (runtime != null && runtime.events != null && !runtime.events.get(type).isEmpty())
+            return true;
 
-            return LuaValue.NIL;
-        };
+        //nothing is listening, so skip converting the arguments and setting up the limits
+        //keeps the pre/post instruction counters in sync
+        limit.use(0);
+        return false;
+    }
+
+    //events are run right away on the calling thread, only pings need to wait on the queue
+    private Varargs execute(Object toRun, Instructions limit, Varargs args) {
+        //run whatever arrived before this event first, then anything queued while running it
+        flushEvents();
+        Varargs ret = call(toRun, limit, args);
+        flushEvents();
+        return ret;
+    }
+
+    private Varargs call(Object toRun, Instructions limit, Varargs val) {
+        if (scriptError || luaRuntime == null || !loaded)
+            return null;
 
-        //add event to the queue
-        events.offer(ev);
+        //instructions limit
+        luaRuntime.setInstructionLimit(limit.remaining);
 
-        Varargs val = LuaValue.NIL;
+        AvatarProfiler profiler = this.profiler;
+        if (profiler != null)
+            profiler.begin(getProfilerName(toRun));
+
+        //get and call event
+        try {
+            Varargs ret;
+            if (toRun instanceof LuaEvent event)
+                ret = event.call(val);
+            else if (toRun instanceof EventsAPI.Type type)
+                ret = luaRuntime.events.get(type).call(val);
+            else if (toRun instanceof LuaFunction func)
+                ret = func.invoke(val);
+            else if (toRun instanceof Pair<?, ?> pair)
+                ret = luaRuntime.run(pair.getFirst().toString(), pair.getSecond().toString());
+            else
+                throw new IllegalArgumentException("Invalid type to run!");
+
+            int instructions = luaRuntime.getInstructions();
+            limit.use(instructions);
+            if (profiler != null)
+                profiler.end(instructions);
+            return ret;
+        } catch (Exception | StackOverflowError e) {
+            if (luaRuntime != null)
+                luaRuntime.error(e);
+        }
+
+        return LuaValue.NIL;
+    }
+
+    private static String getProfilerName(Object toRun) {
+        if (toRun instanceof EventsAPI.Type type)
+            return type.name();
+        if (toRun instanceof Pair<?, ?> pair)
+            return pair.getFirst().toString();
+        if (toRun instanceof LuaEvent)
+            return "EVENT";
+        return "PING";
+    }
 
-        //run all queued events
+    private void flushEvents() {
         Supplier<Varargs> e;
         while ((e = events.poll()) != null) {
             try {
-                Varargs result = e.get();
-
-                //if the event is the same the one created, set the return value to it
-                if (e == ev)
-                    val = result;
+                e.get();
             } catch (Exception | StackOverflowError ex) {
                 if (luaRuntime != null)
                     luaRuntime.error(ex);
             }
         }
-
-        //return the new event result
-        return val;
     }
 
     // -- script events -- //
 
     public void tickEvent() {
         if (loaded && luaRuntime != null && luaRuntime.getUser() != null)
-            run("TICK", tick);
+            run(EventsAPI.Type.TICK, tick);
     }
 
     public void renderEvent(float delta) {
-        if (loaded && luaRuntime != null && luaRuntime.getUser() != null)
-            run("RENDER", render, delta, renderMode.name());
+        if (loaded && luaRuntime != null && luaRuntime.getUser() != null && shouldRunRenderEvents())
+            run(EventsAPI.Type.RENDER, render, delta, renderMode);
     }
 
     public void postRenderEvent(float delta) {
-        if (loaded && luaRuntime != null && luaRuntime.getUser() != null)
-            run("POST_RENDER", render.post(), delta, renderMode.name());
+        if (loaded && luaRuntime != null && luaRuntime.getUser() != null && shouldRunRenderEvents())
+            run(EventsAPI.Type.POST_RENDER, render.post(), delta, renderMode);
         renderMode = EntityRenderMode.OTHER;
     }
 
@@ -331,36 +451,36 @@ public class Avatar {
         if (renderer != null)
             renderer.allowMatrixUpdate = false;
 
-        run("POST_WORLD_RENDER", worldRender.post(), delta);
+        run(EventsAPI.Type.POST_WORLD_RENDER, worldRender.post(), delta);
     }
 
     public boolean skullRenderEvent(float delta, FiguraVec3 pos) {
         Varargs result = null;
         if (loaded && renderer != null && renderer.allowSkullRendering)
-            result = run("SKULL_RENDER", render, delta, pos);
+            result = run(EventsAPI.Type.SKULL_RENDER, render, delta, pos);
         return result != null && result.arg(1).isboolean() && result.arg(1).checkboolean();
     }
 
     public boolean useItemEvent(ItemStackAPI stack, String type, int particleCount) {
-        Varargs result = loaded ? run("USE_ITEM", tick, stack, type, particleCount) : null;
+        Varargs result = loaded ? run(EventsAPI.Type.USE_ITEM, tick, stack, type, particleCount) : null;
         return result != null && result.arg(1).isboolean() && result.arg(1).checkboolean();
     }
 
     // -- host only events -- //
 
     public String chatSendMessageEvent(String message) {
-        Varargs val = loaded ? run("CHAT_SEND_MESSAGE", tick, message) : null;
+        Varargs val = loaded ? run(EventsAPI.Type.CHAT_SEND_MESSAGE, tick, message) : null;
         return val == null || (!val.isnil(1) && !Config.CHAT_MESSAGES.asBool()) ? message : val.isnil(1) ? "" : val.arg(1).tojstring();
     }
 
     public void chatReceivedMessageEvent(String message) {
         if (loaded)
-            run("CHAT_RECEIVE_MESSAGE", tick, message);
+            run(EventsAPI.Type.CHAT_RECEIVE_MESSAGE, tick, message);
     }
 
     public void mouseScrollEvent(double delta) {
         if (loaded)
-            run("MOUSE_SCROLL", tick, delta);
+            run(EventsAPI.Type.MOUSE_SCROLL, tick, delta);
     }
 
     // -- rendering events -- //
@@ -387,6 +507,16 @@ public class Avatar {
             complexity.remaining = trust.get(Trust.COMPLEXITY);
             renderer.render();
             complexity.remaining = prev;
+        } else if (lod == LOD.REDUCED) {
+            //far away avatars only get a fraction of the complexity, and no extra stuff
+            complexity.remaining = Math.min(complexity.remaining, complexity.max / LOD.getComplexityDivisor());
+            renderer.allowPivotParts = false;
+            renderer.allowRenderTasks = false;
+
+            complexity.use(renderer.render());
+
+            renderer.allowPivotParts = true;
+            renderer.allowRenderTasks = true;
         } else {
             complexity.use(renderer.render());
         }
@@ -396,13 +526,8 @@ public class Avatar {
         if (renderer == null || !loaded)
             return;
 
-        for (Queue<Pair<FiguraMat4, FiguraMat3>> queue : renderer.pivotCustomizations.values()) {
-            while (!queue.isEmpty()) {
-                Pair<FiguraMat4, FiguraMat3> pair = queue.poll();
-                pair.getFirst().free();
-                pair.getSecond().free();
-            }
-        }
+        for (PivotTransformBuffer transforms : renderer.pivotTransforms.values())
+            transforms.clear();
 
         renderer.allowMatrixUpdate = true;
         renderer.entity = entity;
@@ -624,32 +749,47 @@ public class Avatar {
         return ret;
     }
 
-    private static final PartCustomization PIVOT_PART_RENDERING_CUSTOMIZATION = PartCustomization.of();
     public synchronized boolean pivotPartRender(ParentType parent, Consumer<PoseStack> consumer) {
         if (renderer == null || !loaded || !parent.isPivot)
             return false;
 
-        Queue<Pair<FiguraMat4, FiguraMat3>> queue = renderer.pivotCustomizations.computeIfAbsent(parent, p -> new ConcurrentLinkedQueue<>());
-
-        if (queue.isEmpty())
+        PivotTransformBuffer transforms = renderer.pivotTransforms.get(parent);
+        if (transforms == null || transforms.isEmpty())
             return false;
 
-        int i = 0;
-        while (!queue.isEmpty() && i++ < 1000) { // limit of 1000 pivot part renders, just in case something goes infinitely somehow
-            Pair<FiguraMat4, FiguraMat3> matrixPair = queue.poll();
-            PIVOT_PART_RENDERING_CUSTOMIZATION.setPositionMatrix(matrixPair.getFirst());
-            PIVOT_PART_RENDERING_CUSTOMIZATION.setNormalMatrix(matrixPair.getSecond());
-            PIVOT_PART_RENDERING_CUSTOMIZATION.needsMatrixRecalculation = false;
-            PoseStack stack = PIVOT_PART_RENDERING_CUSTOMIZATION.copyIntoGlobalPoseStack();
-            consumer.accept(stack);
-            matrixPair.getFirst().free();
-            matrixPair.getSecond().free();
-        }
+        for (int i = 0; i < transforms.size(); i++)
+            consumer.accept(transforms.load(i));
 
-        queue.clear();
+        transforms.clear();
         return true;
     }
 
+    // -- level of detail -- //
+
+    public void updateLod(Entity entity, boolean visible, double camX, double camY, double camZ) {
+        int distance = trust.get(Trust.LOD_DISTANCE);
+        if (Trust.LOD_DISTANCE.checkInfinity(distance)) {
+            lod = LOD.FULL;
+            return;
+        }
+
+        double dist = entity.distanceToSqr(camX, camY, camZ);
+        if (dist > 4d * distance * distance)
+            lod = LOD.VANILLA;
+        else if (!visible || dist > (double) distance * distance)
+            lod = LOD.REDUCED;
+        else
+            lod = LOD.FULL;
+    }
+
+    public boolean useVanillaModel() {
+        return lod == LOD.VANILLA && !UIHelper.paperdoll;
+    }
+
+    private boolean shouldRunRenderEvents() {
+        return lod == LOD.FULL || UIHelper.paperdoll || lod == LOD.REDUCED && renderFrame == 0;
+    }
+
     // -- animations -- //
 
     public void applyAnimations() {
@@ -680,6 +820,16 @@ public class Avatar {
      * also closes and stops this avatar sounds
      */
     public void clean() {
+        //cancels any load still running
+        loadGeneration.incrementAndGet();
+
+        //keep what was profiled until now
+        AvatarProfiler profiler = this.profiler;
+        if (profiler != null) {
+            this.profiler = null;
+            profiler.save();
+        }
+
         if (renderer != null)
             renderer.invalidate();
 
@@ -710,6 +860,65 @@ public class Avatar {
 
     // -- loading -- //
 
+    private CompletableFuture<Void> runStage(String stage, Runnable task) {
+        return CompletableFuture.runAsync(() -> timed(stage, () -> {
+            task.run();
+            return null;
+        }), LOAD_POOL);
+    }
+
+    private <T> CompletableFuture<T> supplyStage(String stage, Supplier<T> task) {
+        return CompletableFuture.supplyAsync(() -> timed(stage, task), LOAD_POOL);
+    }
+
+    private <T> T timed(String stage, Supplier<T> task) {
+        long start = System.nanoTime();
+        T result = task.get();
+        loadTimes.put(stage, (System.nanoTime() - start) / 1_000_000L);
+        return result;
+    }
+
+    private void loadMetadata(int compressedSize) {
+        CompoundTag metadata = nbt.getCompound("metadata");
+        name = metadata.getString("name");
+        authors = metadata.getString("authors");
+        version = new Version(metadata.getString("ver"));
+        if (metadata.contains("id"))
+            id = metadata.getString("id");
+        if (metadata.contains("color"))
+            color = metadata.getString("color");
+        if (metadata.contains("minify"))
+            minify = metadata.getBoolean("minify");
+        fileSize = compressedSize >= 0 ? compressedSize : getFileSize();
+        versionStatus = version.compareTo(FiguraMod.VERSION);
+        if (entityName.isBlank())
+            entityName = name;
+    }
+
+    private Map<String, FiguraTexture> loadTextures() {
+        CompoundTag src = nbt.getCompound("textures").getCompound("src");
+
+        //each image is decoded on its own
+        Map<String, FiguraTexture> textures = new ConcurrentHashMap<>();
+        src.getAllKeys().parallelStream().forEach(key -> {
+            byte[] data = src.getByteArray(key);
+            if (data.length != 0)
+                textures.put(key, sharedData != null ? new FiguraTexture(this, key, sharedData.getTexture(key, data), false) : new FiguraTexture(this, key, data));
+        });
+
+        return textures;
+    }
+
+    private AvatarRenderer createRenderer(Map<String, FiguraTexture> textures) {
+        return Config.AVATAR_RENDERER.asInt() == 1 ? new RetainedAvatarRenderer(this, textures) : new ImmediateAvatarRenderer(this, textures);
+    }
+
+    //compiled ahead of time, so the runtime only needs to find them in the cache
+    private void compileScripts() {
+        CompoundTag scriptsNbt = nbt.getCompound("scripts");
+        scriptsNbt.getAllKeys().parallelStream().forEach(s -> CompiledScriptCache.compile(new String(scriptsNbt.getByteArray(s), StandardCharsets.UTF_8), s));
+    }
+
     private void createLuaRuntime() {
         if (!nbt.contains("scripts"))
             return;
@@ -789,24 +998,46 @@ public class Avatar {
         }
     }
 
-    private void loadCustomSounds() {
+    private Map<String, SoundBuffer> loadCustomSounds() {
+        Map<String, SoundBuffer> sounds = new ConcurrentHashMap<>();
         if (!nbt.contains("sounds"))
-            return;
+            return sounds;
 
         CompoundTag root = nbt.getCompound("sounds");
-        for (String key : root.getAllKeys()) {
+        root.getAllKeys().parallelStream().forEach(key -> {
             try {
-                loadSound(key, root.getByteArray(key));
+                byte[] data = root.getByteArray(key);
+                sounds.put(key, sharedData != null ? sharedData.getSound(key, data) : decodeSound(data));
             } catch (Exception e) {
                 FiguraMod.LOGGER.warn("Failed to load custom sound \"" + key + "\"", e);
             }
-        }
+        });
+
+        return sounds;
     }
 
     public void loadSound(String name, byte[] data) throws Exception {
+        this.customSounds.put(name, decodeSound(data));
+    }
+
+    private static SoundBuffer decodeSound(byte[] data) throws Exception {
         try (ByteArrayInputStream inputStream = new ByteArrayInputStream(data); OggAudioStream oggAudioStream = new OggAudioStream(inputStream)) {
-            SoundBuffer sound = new SoundBuffer(oggAudioStream.readAll(), oggAudioStream.getFormat());
-            this.customSounds.put(name, sound);
+            return new SoundBuffer(oggAudioStream.readAll(), oggAudioStream.getFormat());
+        }
+    }
+
+    public enum LOD {
+        FULL,
+        REDUCED,
+        VANILLA;
+
+        //reduced avatars only run their render events every few frames, and get a fraction of the complexity
+        public static int getEventInterval() {
+            return Math.max(Config.REDUCED_DETAIL_EVENT_INTERVAL.asInt(), 1);
+        }
+
+        public static int getComplexityDivisor() {
+            return Math.max(Config.REDUCED_DETAIL_COMPLEXITY_DIVISOR.asInt(), 1);
         }
     }
 
@@ -0,0 +1,209 @@
+package org.moon.figura.avatar;
+
+import com.mojang.blaze3d.audio.OggAudioStream;
+import com.mojang.blaze3d.audio.SoundBuffer;
+import com.mojang.blaze3d.platform.NativeImage;
+import net.minecraft.nbt.ByteArrayTag;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.IntArrayTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.LongArrayTag;
+import net.minecraft.nbt.StringTag;
+import net.minecraft.nbt.Tag;
+import org.moon.figura.config.Config;
+import org.moon.figura.model.rendering.texture.FiguraTexture;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decoded avatar data shared by everyone wearing the same avatar, by its hash.
+ * Only the immutable data is kept here, each avatar still gets its own copy of the textures,
+ * as scripts can edit them, and its own sound buffers, as they hold their own OpenAL buffer.
+ * The cache is bounded by the estimated memory of the decoded data, set in the config.
+ */
+public class AvatarDataCache {
+
+    //hash -> data, least recently used first
+    private static final Map<String, Data> CACHE = new LinkedHashMap<>(16, 0.75f, true);
+    private static long totalSize;
+
+    public static Data get(String hash) {
+        synchronized (CACHE) {
+            return CACHE.get(hash);
+        }
+    }
+
+    /**
+     * @param compressedSize The size of the compressed nbt
+     */
+    public static Data put(String hash, CompoundTag nbt, int compressedSize) {
+        Data data = get(hash);
+        if (data != null)
+            return data;
+
+        //estimated outside the lock, as it walks the whole nbt
+        long size = estimateSize(nbt);
+
+        synchronized (CACHE) {
+            data = CACHE.get(hash);
+            if (data != null)
+                return data;
+
+            data = new Data(nbt, compressedSize, size);
+            CACHE.put(hash, data);
+            grow(size);
+            return data;
+        }
+    }
+
+    /**
+     * Drops the least recently used data until the cache fits in the config size again.
+     */
+    public static void trim() {
+        synchronized (CACHE) {
+            grow(0);
+        }
+    }
+
+    private static void grow(long size) {
+        totalSize += size;
+
+        //drop the least recently used, the avatars using them already have their own copies
+        long maxSize = Config.AVATAR_DATA_CACHE_SIZE.asInt() * 1024L * 1024L;
+        Iterator<Data> iterator = CACHE.values().iterator();
+        while (totalSize > maxSize && iterator.hasNext()) {
+            Data data = iterator.next();
+            iterator.remove();
+            totalSize -= data.size;
+            data.close();
+        }
+    }
+
+    //rough memory used by the decoded tags, as the compressed size can be many times smaller
+    private static long estimateSize(Tag tag) {
+        if (tag instanceof CompoundTag compound) {
+            long size = 48;
+            for (String key : compound.getAllKeys())
+                size += 32 + 40 + key.length() * 2L + estimateSize(compound.get(key));
+            return size;
+        }
+        if (tag instanceof ListTag list) {
+            long size = 40 + list.size() * 8L;
+            for (Tag child : list)
+                size += estimateSize(child);
+            return size;
+        }
+        if (tag instanceof ByteArrayTag array)
+            return 32 + array.getAsByteArray().length;
+        if (tag instanceof IntArrayTag array)
+            return 32 + array.getAsIntArray().length * 4L;
+        if (tag instanceof LongArrayTag array)
+            return 32 + array.getAsLongArray().length * 8L;
+        if (tag instanceof StringTag string)
+            return 40 + string.getAsString().length() * 2L;
+
+        //numbers
+        return 16;
+    }
+
+    public static class Data {
+
+        public final CompoundTag nbt;
+        public final int compressedSize;
+
+        private final Map<String, NativeImage> textures = new HashMap<>();
+        private final Map<String, Pcm> sounds = new ConcurrentHashMap<>();
+        private long size;
+        private boolean closed;
+
+        private Data(CompoundTag nbt, int compressedSize, long size) {
+            this.nbt = nbt;
+            this.compressedSize = compressedSize;
+            this.size = size;
+        }
+
+        /**
+         * @return A copy of the decoded image, decoding it only if no other avatar did it before
+         */
+        public NativeImage getTexture(String name, byte[] data) {
+            //locked with the eviction, so the images are not closed midway
+            synchronized (this) {
+                NativeImage image = closed ? null : textures.get(name);
+                if (image != null)
+                    return copy(image);
+            }
+
+            NativeImage decoded = FiguraTexture.readImage(data);
+            NativeImage result;
+            synchronized (this) {
+                if (closed)
+                    return decoded;
+
+                NativeImage image = textures.putIfAbsent(name, decoded);
+                if (image != null) {
+                    decoded.close();
+                    return copy(image);
+                }
+
+                result = copy(decoded);
+            }
+
+            add((long) decoded.getWidth() * decoded.getHeight() * decoded.format().components());
+            return result;
+        }
+
+        private static NativeImage copy(NativeImage image) {
+            NativeImage copy = new NativeImage(image.format(), image.getWidth(), image.getHeight(), false);
+            copy.copyFrom(image);
+            return copy;
+        }
+
+        /**
+         * @return A new sound buffer, sharing the decoded audio with the other avatars
+         */
+        public SoundBuffer getSound(String name, byte[] data) throws Exception {
+            Pcm pcm = sounds.get(name);
+            if (pcm == null) {
+                try (ByteArrayInputStream inputStream = new ByteArrayInputStream(data); OggAudioStream oggAudioStream = new OggAudioStream(inputStream)) {
+                    pcm = new Pcm(oggAudioStream.readAll(), oggAudioStream.getFormat());
+                }
+
+                Pcm old = sounds.putIfAbsent(name, pcm);
+                if (old == null)
+                    add(pcm.data.remaining());
+                else
+                    pcm = old;
+            }
+
+            //the buffer is only read when uploaded to OpenAL, so it can be shared
+            return new SoundBuffer(pcm.data.duplicate(), pcm.format);
+        }
+
+        private void add(long size) {
+            synchronized (CACHE) {
+                if (closed)
+                    return;
+
+                this.size += size;
+                grow(size);
+            }
+        }
+
+        private synchronized void close() {
+            closed = true;
+            for (NativeImage image : textures.values())
+                image.close();
+            textures.clear();
+            sounds.clear();
+        }
+    }
+
+    private record Pcm(ByteBuffer data, AudioFormat format) {}
+}
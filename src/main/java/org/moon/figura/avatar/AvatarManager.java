@@ -8,6 +8,7 @@ import net.minecraft.world.entity.player.Player;
 import org.moon.figura.FiguraMod;
 import org.moon.figura.avatar.local.LocalAvatarLoader;
 import org.moon.figura.backend2.NetworkStuff;
+import org.moon.figura.config.Config;
 import org.moon.figura.gui.FiguraToast;
 import org.moon.figura.gui.widgets.lists.AvatarList;
 import org.moon.figura.utils.FiguraText;
@@ -15,6 +16,8 @@ import org.moon.figura.utils.FiguraText;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 
 /**
  * Manages all the avatars that are currently loaded in memory, and also
@@ -26,6 +29,13 @@ public class AvatarManager {
     private static final Map<UUID, UserData> LOADED_USERS = new ConcurrentHashMap<>();
     private static final Set<UUID> FETCHED_USERS = new HashSet<>();
 
+    //runs the avatars tick events when parallel ticking is enabled
+    private static final ForkJoinPool TICK_POOL = new ForkJoinPool(Math.max(Runtime.getRuntime().availableProcessors() - 1, 1), pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("Figura Avatar Tick " + thread.getPoolIndex());
+        return thread;
+    }, null, false);
+
     public static boolean localUploaded = true; //init as true :3
     public static boolean panic = false;
 
@@ -49,10 +59,29 @@ public class AvatarManager {
         */
 
         //tick the avatar
+        if (!Config.PARALLEL_TICK.asBool()) {
+            for (UserData user : LOADED_USERS.values()) {
+                for (Avatar avatar : user.getAvatars())
+                    avatar.tick();
+            }
+            return;
+        }
+
+        //each avatar has its own runtime, so their scripts can run at the same time
+        //the client thread waits for all of them, so the world stays the same while they read it
+        //and anything else, like particles, sounds and pings, is sent back to the client thread
+        List<Avatar> toTick = new ArrayList<>();
         for (UserData user : LOADED_USERS.values()) {
-            for (Avatar avatar : user.getAvatars())
-                avatar.tick();
+            for (Avatar avatar : user.getAvatars()) {
+                if (avatar.prepareTick())
+                    toTick.add(avatar);
+            }
         }
+
+        if (toTick.size() == 1)
+            toTick.get(0).runTickEvents();
+        else if (!toTick.isEmpty())
+            TICK_POOL.submit(() -> toTick.parallelStream().forEach(Avatar::runTickEvents)).join();
     }
 
     public static void onWorldRender(float tickDelta) {
@@ -125,6 +154,15 @@ public class AvatarManager {
         return null;
     }
 
+    /**
+     * Gets the avatar which customizes the rendering of an entity.
+     * @return null when there is none, or when the level of detail renders the entity as vanilla
+     */
+    public static Avatar getRenderedAvatar(Entity entity) {
+        Avatar avatar = getAvatar(entity);
+        return avatar == null || avatar.useVanillaModel() ? null : avatar;
+    }
+
     //get a loaded avatar without fetching backend or creating a new one
     public static Avatar getLoadedAvatar(UUID owner) {
         if (panic || Minecraft.getInstance().level == null)
@@ -178,6 +216,12 @@ public class AvatarManager {
             clearAvatars(id);
     }
 
+    //reloads all loaded avatars
+    public static void reloadAllAvatars() {
+        for (UUID id : LOADED_USERS.keySet())
+            reloadAvatar(id);
+    }
+
     //load the local player avatar
     public static void loadLocalAvatar(Path path) {
         UUID id = FiguraMod.getLocalPlayerUUID();
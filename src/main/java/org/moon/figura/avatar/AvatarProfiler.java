@@ -0,0 +1,166 @@
+package org.moon.figura.avatar;
+
+import net.minecraft.network.chat.ClickEvent;
+import net.minecraft.network.chat.Style;
+import org.luaj.vm2.Prototype;
+import org.moon.figura.FiguraMod;
+import org.moon.figura.utils.FiguraText;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Samples the lua call stack of an avatar for a while, per event.
+ * Samples are merged into a call tree of the running functions, so sampling never builds strings.
+ * Results are saved as collapsed stacks, the format used by flamegraph tools,
+ * once weighted by instructions and once by wall clock time, in microseconds.
+ */
+public class AvatarProfiler {
+
+    //how many instructions between each call stack sample
+    public static final int SAMPLE_INTERVAL = 100;
+
+    private final String name;
+    private final long end;
+
+    //event name -> call tree of that event
+    private final Map<String, Node> events = new HashMap<>();
+
+    private Node event;
+    private int lastInstructions;
+    private long lastTime;
+
+    public AvatarProfiler(String name, int seconds) {
+        this.name = name;
+        this.end = System.nanoTime() + seconds * 1_000_000_000L;
+    }
+
+    public boolean isDone() {
+        return System.nanoTime() >= end;
+    }
+
+    public void begin(String event) {
+        this.event = events.computeIfAbsent(event, e -> new Node());
+        this.lastInstructions = 0;
+        this.lastTime = System.nanoTime();
+    }
+
+    /**
+     * @param frames The functions being run, from the outermost to the innermost
+     * @param instructions The instructions used since the event began
+     */
+    public void sample(Prototype[] frames, int size, int instructions) {
+        if (event == null)
+            return;
+
+        Node node = event;
+        for (int i = 0; i < size; i++)
+            node = node.children.computeIfAbsent(frames[i], f -> new Node());
+        add(node, instructions);
+    }
+
+    //anything after the last sample is counted for the event itself
+    public void end(int instructions) {
+        if (event == null)
+            return;
+
+        add(event, instructions);
+        event = null;
+    }
+
+    private void add(Node node, int instructions) {
+        long now = System.nanoTime();
+        node.weights[0] += instructions - lastInstructions;
+        node.weights[1] += now - lastTime;
+
+        lastInstructions = instructions;
+        lastTime = now;
+    }
+
+    private static class Node {
+        //prototypes are compared by identity, so the same function is always the same node
+        private final Map<Prototype, Node> children = new IdentityHashMap<>();
+        //{instructions, nanoseconds}
+        private final long[] weights = new long[2];
+    }
+
+    /**
+     * The lua functions being run by a coroutine, kept by the runtime while profiling.
+     */
+    public static class CallStack {
+        private Prototype[] frames = new Prototype[16];
+        private int size;
+
+        public void push(Prototype prototype) {
+            if (size == frames.length)
+                frames = Arrays.copyOf(frames, size * 2);
+            frames[size++] = prototype;
+        }
+
+        //frames entered before the profiling started are not in the stack
+        public void pop() {
+            if (size > 0)
+                frames[--size] = null;
+        }
+
+        public void sample(AvatarProfiler profiler, int instructions) {
+            profiler.sample(frames, size, instructions);
+        }
+    }
+
+    // -- saving -- //
+
+    public void save() {
+        try {
+            Path dir = FiguraMod.getFiguraDirectory().resolve("profiles");
+            Files.createDirectories(dir);
+
+            String fileName = name + "_" + new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(new Date());
+            Files.write(dir.resolve(fileName + "_instructions.txt"), getLines(0, 1));
+            Files.write(dir.resolve(fileName + "_time.txt"), getLines(1, 1000));
+
+            FiguraMod.sendChatMessage(
+                    FiguraText.of("command.profile.success", name)
+                            .append(" ")
+                            .append(FiguraText.of("command.click_to_open")
+                                    .setStyle(Style.EMPTY.withClickEvent(new ClickEvent(ClickEvent.Action.OPEN_FILE, dir.toString())).withUnderlined(true))
+                            )
+            );
+        } catch (IOException e) {
+            FiguraMod.sendChatMessage(FiguraText.of("command.profile.error", name));
+            FiguraMod.LOGGER.error("Failed to save " + FiguraMod.MOD_NAME + " profile!", e);
+        }
+    }
+
+    private List<String> getLines(int index, long divisor) {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, Node> entry : events.entrySet())
+            addLines(lines, entry.getKey(), entry.getValue(), index, divisor);
+        return lines;
+    }
+
+    private static void addLines(List<String> lines, String stack, Node node, int index, long divisor) {
+        long weight = node.weights[index] / divisor;
+        if (weight > 0)
+            lines.add(stack + " " + weight);
+
+        for (Map.Entry<Prototype, Node> entry : node.children.entrySet())
+            addLines(lines, stack + ";" + getFrameName(entry.getKey()), entry.getValue(), index, divisor);
+    }
+
+    //"source" for main chunks, and "source:line" for functions, with the line they are defined at
+    private static String getFrameName(Prototype prototype) {
+        String source = prototype.source.tojstring();
+        String frame = prototype.linedefined == 0 ? source : source + ":" + prototype.linedefined;
+        return frame.replace(';', ',');
+    }
+}
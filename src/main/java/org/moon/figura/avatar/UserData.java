@@ -11,6 +11,9 @@ import java.util.BitSet;
 import java.util.List;
 import java.util.UUID;
 
+/**
+ * The avatars list is only changed on the client thread, as the backend and cache callbacks run on several threads.
+ */
 public class UserData {
 
     public final UUID id;
@@ -22,21 +25,47 @@ public class UserData {
     }
 
     public void loadData(ArrayList<Pair<String, Pair<String, UUID>>> avatars, Pair<BitSet,BitSet> badges) {
+        FiguraMod.runOnClientThread(() -> loadDataNow(avatars, badges));
+    }
+
+    private void loadDataNow(ArrayList<Pair<String, Pair<String, UUID>>> avatars, Pair<BitSet,BitSet> badges) {
         loadBadges(badges);
         clear();
         for (Pair<String, Pair<String, UUID>> avatar : avatars) {
-            if (!CacheAvatarLoader.checkAndLoad(avatar.getFirst(), this)) {
-                Pair<String, UUID> pair = avatar.getSecond();
-                NetworkStuff.getAvatar(this, pair.getSecond(), pair.getFirst(), avatar.getFirst());
+            //already decoded for someone else
+            AvatarDataCache.Data data = AvatarDataCache.get(avatar.getFirst());
+            if (data != null) {
+                loadAvatar(data);
+                continue;
             }
+
+            Pair<String, UUID> pair = avatar.getSecond();
+            Runnable download = () -> NetworkStuff.getAvatar(this, pair.getSecond(), pair.getFirst(), avatar.getFirst());
+            if (!CacheAvatarLoader.checkAndLoad(avatar.getFirst(), this, download))
+                download.run();
         }
     }
 
     public void loadAvatar(CompoundTag nbt) {
-        Avatar avatar = new Avatar(id);
-        this.avatars.add(avatar);
-        avatar.load(nbt);
-        FiguraMod.debug("Loaded avatar for " + id);
+        loadAvatar(nbt, -1);
+    }
+
+    public void loadAvatar(CompoundTag nbt, int compressedSize) {
+        FiguraMod.runOnClientThread(() -> {
+            Avatar avatar = new Avatar(id);
+            this.avatars.add(avatar);
+            avatar.load(nbt, compressedSize);
+            FiguraMod.debug("Loaded avatar for " + id);
+        });
+    }
+
+    public void loadAvatar(AvatarDataCache.Data data) {
+        FiguraMod.runOnClientThread(() -> {
+            Avatar avatar = new Avatar(id);
+            this.avatars.add(avatar);
+            avatar.load(data);
+            FiguraMod.debug("Loaded shared avatar for " + id);
+        });
     }
 
     public void loadBadges(Pair<BitSet, BitSet> pair) {
@@ -56,8 +85,10 @@ public class UserData {
     }
 
     public void clear() {
-        for (Avatar avatar : avatars)
-            avatar.clean();
-        avatars.clear();
+        FiguraMod.runOnClientThread(() -> {
+            for (Avatar avatar : avatars)
+                avatar.clean();
+            avatars.clear();
+        });
     }
 }
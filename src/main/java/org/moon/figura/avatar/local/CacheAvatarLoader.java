@@ -1,79 +1,210 @@
 package org.moon.figura.avatar.local;
 
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.Tag;
 import org.moon.figura.FiguraMod;
+import org.moon.figura.avatar.AvatarDataCache;
 import org.moon.figura.avatar.UserData;
+import org.moon.figura.config.Config;
+import org.moon.figura.utils.IOUtils;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.attribute.FileTime;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
 
+/**
+ * Downloaded avatars, stored by their hash.
+ * An index with the size, checksum and last access of every avatar is kept in memory,
+ * so lookups never touch the disk, and the least recently used avatars are deleted
+ * once the cache goes over the size set in the config.
+ */
 public class CacheAvatarLoader {
 
-    public static void init() {
-        LocalAvatarLoader.async(() -> {
-            File file = getAvatarCacheDirectory().toFile();
-            if (!file.exists() || !file.isDirectory())
-                return;
+    private static final String INDEX_FILE = "avatar_cache";
 
-            File[] children = file.listFiles();
-            if (children == null)
-                return;
+    //how often, in ticks, a changed index is written to disk
+    private static final int SAVE_INTERVAL = 1200;
 
-            for (File child : children) {
-                try {
-                    FileTime time = Files.getLastModifiedTime(child.toPath());
-                    long diff = System.currentTimeMillis() - time.toMillis();
-                    long elapsed = TimeUnit.MILLISECONDS.toDays(diff);
-                    if (elapsed > 7) {
-                        if (child.delete()) {
-                            FiguraMod.debug("Successfully deleted cache avatar \"{}\" with \"{}\" days old", child.getName(), elapsed);
-                        } else {
-                            throw new Exception();
-                        }
-                    }
-                } catch (Exception ignored) {
-                    FiguraMod.debug("Failed to delete cache avatar \"{}\"", child.getName());
+    //bigger files are memory mapped instead of copied to the heap
+    private static final long MAP_THRESHOLD = 1024 * 1024;
+
+    //hash -> entry, least recently used first
+    private static final Map<String, CacheEntry> INDEX = new LinkedHashMap<>(16, 0.75f, true);
+    private static long totalSize;
+    private static boolean dirty;
+
+    public static void init() {
+        //read the index right away, as it answers every lookup
+        IOUtils.readCacheFile(INDEX_FILE, nbt -> {
+            List<Map.Entry<String, CacheEntry>> entries = new ArrayList<>();
+            for (Tag tag : nbt.getList("avatars", Tag.TAG_COMPOUND)) {
+                CompoundTag compound = (CompoundTag) tag;
+                entries.add(Map.entry(compound.getString("hash"), new CacheEntry(compound.getLong("size"), compound.getInt("checksum"), compound.getLong("access"))));
+            }
+
+            //keep the access order
+            entries.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess));
+            synchronized (INDEX) {
+                for (Map.Entry<String, CacheEntry> entry : entries) {
+                    INDEX.put(entry.getKey(), entry.getValue());
+                    totalSize += entry.getValue().size;
                 }
             }
         });
+
+        LocalAvatarLoader.async(CacheAvatarLoader::validate);
     }
 
-    public static boolean checkAndLoad(String hash, UserData target) {
-        Path p = getAvatarCacheDirectory();
-        p = p.resolve(hash + ".moon");
+    //matches the index with the files on disk, and removes old avatars
+    private static void validate() {
+        File[] children = getAvatarCacheDirectory().toFile().listFiles();
+        if (children == null)
+            return;
 
-        if (Files.exists(p)) {
-            load(hash, target);
-            return true;
+        //copied, as reading the index would change its access order
+        Map<String, CacheEntry> indexed;
+        synchronized (INDEX) {
+            indexed = new HashMap<>(INDEX);
         }
 
-        return false;
+        //the files are read without holding the index, so lookups are never blocked by the disk
+        Map<String, CacheEntry> scanned = new HashMap<>();
+        Set<String> found = new HashSet<>();
+        for (File child : children) {
+            String fileName = child.getName();
+            if (!fileName.endsWith(".moon"))
+                continue;
+
+            String hash = fileName.substring(0, fileName.length() - 5);
+            CacheEntry entry = indexed.get(hash);
+
+            //files without entry, like the ones saved before the index existed
+            if (entry == null || entry.size != child.length()) {
+                try {
+                    ByteBuffer data = read(child.toPath(), child.length());
+                    scanned.put(hash, new CacheEntry(data.remaining(), checksum(data), Files.getLastModifiedTime(child.toPath()).toMillis()));
+                } catch (Exception e) {
+                    FiguraMod.debug("Failed to index cache avatar \"{}\"", fileName);
+                    continue;
+                }
+            }
+
+            found.add(hash);
+        }
+
+        synchronized (INDEX) {
+            //skip the entries that were changed while the files were being read
+            for (Map.Entry<String, CacheEntry> entry : scanned.entrySet()) {
+                if (INDEX.get(entry.getKey()) == indexed.get(entry.getKey()))
+                    put(entry.getKey(), entry.getValue());
+            }
+
+            long now = System.currentTimeMillis();
+            Iterator<Map.Entry<String, CacheEntry>> iterator = INDEX.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, CacheEntry> entry = iterator.next();
+                long elapsed = TimeUnit.MILLISECONDS.toDays(now - entry.getValue().lastAccess);
+
+                //missing files, unless they were saved after the scan
+                if (!found.contains(entry.getKey())) {
+                    if (indexed.get(entry.getKey()) != entry.getValue())
+                        continue;
+                    iterator.remove();
+                    totalSize -= entry.getValue().size;
+                } else if (elapsed > 7) {
+                    iterator.remove();
+                    totalSize -= entry.getValue().size;
+                    delete(entry.getKey());
+                    FiguraMod.debug("Deleted cache avatar \"{}\" with \"{}\" days old", entry.getKey(), elapsed);
+                }
+            }
+
+            evict();
+        }
+
+        saveIndex();
     }
 
-    public static void load(String hash, UserData target) {
+    public static boolean checkAndLoad(String hash, UserData target, Runnable fallback) {
+        synchronized (INDEX) {
+            if (!INDEX.containsKey(hash))
+                return false;
+        }
+
+        load(hash, target, fallback);
+        return true;
+    }
+
+    /**
+     * @param fallback Runs on the client thread when the avatar could not be read from the cache
+     */
+    public static void load(String hash, UserData target, Runnable fallback) {
         LocalAvatarLoader.async(() -> {
-            Path path = getAvatarCacheDirectory().resolve(hash + ".moon");
             try {
-                target.loadAvatar(NbtIo.readCompressed(new FileInputStream(path.toFile())));
+                CacheEntry entry;
+                synchronized (INDEX) {
+                    entry = INDEX.get(hash);
+                }
+
+                if (entry == null)
+                    throw new IOException("Avatar is not cached anymore");
+
+                ByteBuffer data = read(getAvatarCacheDirectory().resolve(hash + ".moon"), entry.size);
+                if (checksum(data.duplicate()) != entry.checksum)
+                    throw new IOException("Checksum mismatch");
+
+                synchronized (INDEX) {
+                    entry.lastAccess = System.currentTimeMillis();
+                    dirty = true;
+                }
+
+                target.loadAvatar(AvatarDataCache.put(hash, NbtIo.readCompressed(new BufferInputStream(data)), (int) entry.size));
                 FiguraMod.debug("Loaded avatar \"{}\" from cache to \"{}\"", hash, target.id);
             } catch (Exception e) {
                 FiguraMod.LOGGER.error("Failed to load cache avatar: " + hash, e);
+
+                //corrupted or missing, so get it again
+                synchronized (INDEX) {
+                    remove(hash);
+                    dirty = true;
+                }
+                FiguraMod.runOnClientThread(fallback);
             }
         });
     }
 
-    public static void save(String hash, CompoundTag nbt) {
+    //the data is already compressed, as downloaded from the backend
+    public static void save(String hash, byte[] data) {
         LocalAvatarLoader.async(() -> {
             Path file = getAvatarCacheDirectory().resolve(hash + ".moon");
             try {
-                NbtIo.writeCompressed(nbt, new FileOutputStream(file.toFile()));
+                Files.write(file, data);
+
+                synchronized (INDEX) {
+                    put(hash, new CacheEntry(data.length, checksum(ByteBuffer.wrap(data)), System.currentTimeMillis()));
+                    evict();
+                    dirty = true;
+                }
+
                 FiguraMod.debug("Saved avatar \"{}\" on cache", hash);
             } catch (Exception e) {
                 FiguraMod.LOGGER.error("Failed to save avatar on cache: " + hash, e);
@@ -81,6 +212,139 @@ public class CacheAvatarLoader {
         });
     }
 
+    public static void trim() {
+        LocalAvatarLoader.async(() -> {
+            synchronized (INDEX) {
+                evict();
+                dirty = true;
+            }
+        });
+    }
+
+    public static void tick() {
+        if (FiguraMod.ticks % SAVE_INTERVAL == 0)
+            LocalAvatarLoader.async(CacheAvatarLoader::flush);
+    }
+
+    /**
+     * Writes the index to disk, if it changed since the last time it was written.
+     */
+    public static void flush() {
+        synchronized (INDEX) {
+            if (!dirty)
+                return;
+        }
+        saveIndex();
+    }
+
+    // -- index -- //
+
+    //deletes the least recently used avatars until the cache fits in the config size
+    private static void evict() {
+        long maxSize = Config.AVATAR_CACHE_SIZE.asInt() * 1024L * 1024L;
+        Iterator<Map.Entry<String, CacheEntry>> iterator = INDEX.entrySet().iterator();
+        while (totalSize > maxSize && iterator.hasNext()) {
+            Map.Entry<String, CacheEntry> entry = iterator.next();
+            iterator.remove();
+            totalSize -= entry.getValue().size;
+            delete(entry.getKey());
+            FiguraMod.debug("Evicted cache avatar \"{}\"", entry.getKey());
+        }
+    }
+
+    private static void put(String hash, CacheEntry entry) {
+        CacheEntry old = INDEX.put(hash, entry);
+        if (old != null)
+            totalSize -= old.size;
+        totalSize += entry.size;
+    }
+
+    private static void remove(String hash) {
+        CacheEntry old = INDEX.remove(hash);
+        if (old != null)
+            totalSize -= old.size;
+        delete(hash);
+    }
+
+    private static void delete(String hash) {
+        try {
+            Files.deleteIfExists(getAvatarCacheDirectory().resolve(hash + ".moon"));
+        } catch (Exception ignored) {
+            //still mapped, it will be indexed again on the next start
+            FiguraMod.debug("Failed to delete cache avatar \"{}\"", hash);
+        }
+    }
+
+    //the index is copied while locked, and written after, so the loads are never blocked by the disk
+    private static synchronized void saveIndex() {
+        ListTag list = new ListTag();
+        synchronized (INDEX) {
+            for (Map.Entry<String, CacheEntry> entry : INDEX.entrySet()) {
+                CompoundTag compound = new CompoundTag();
+                compound.putString("hash", entry.getKey());
+                compound.putLong("size", entry.getValue().size);
+                compound.putInt("checksum", entry.getValue().checksum);
+                compound.putLong("access", entry.getValue().lastAccess);
+                list.add(compound);
+            }
+            dirty = false;
+        }
+
+        IOUtils.saveCacheFile(INDEX_FILE, nbt -> nbt.put("avatars", list));
+    }
+
+    // -- reading -- //
+
+    private static ByteBuffer read(Path path, long size) throws IOException {
+        if (size < MAP_THRESHOLD)
+            return ByteBuffer.wrap(Files.readAllBytes(path));
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static int checksum(ByteBuffer data) {
+        CRC32C crc = new CRC32C();
+        crc.update(data);
+        return (int) crc.getValue();
+    }
+
+    private static class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int off, int len) {
+            if (!buffer.hasRemaining())
+                return -1;
+
+            len = Math.min(len, buffer.remaining());
+            buffer.get(bytes, off, len);
+            return len;
+        }
+    }
+
+    private static class CacheEntry {
+        private final long size;
+        private final int checksum;
+        private long lastAccess;
+
+        private CacheEntry(long size, int checksum, long lastAccess) {
+            this.size = size;
+            this.checksum = checksum;
+            this.lastAccess = lastAccess;
+        }
+    }
+
     //cache directory
     public static Path getAvatarCacheDirectory() {
         Path p = FiguraMod.getCacheDirectory().resolve("avatars");
@@ -9,17 +9,13 @@ import org.moon.figura.parsers.AvatarMetadataParser;
 import org.moon.figura.utils.IOUtils;
 
 import java.io.File;
-import java.nio.file.FileAlreadyExistsException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.nio.file.*;
+import java.util.*;
 
 /**
  * Navigates through the file system, finding all folders
  * containing avatar.json as well as all .moon files.
+ * A watch service keeps track of changes, so only the changed folders are fetched again.
  */
 public class LocalAvatarFetcher {
 
@@ -30,22 +26,203 @@ public class LocalAvatarFetcher {
     public static final List<AvatarPath> ALL_AVATARS = new ArrayList<>();
     private static final Map<String, Boolean> FOLDER_DATA = new HashMap<>();
 
+    //avatar.json path -> parsed metadata, saved on the cache so avatars are only parsed again when modified
+    private static final Map<String, CachedMetadata> METADATA = new HashMap<>();
+
+    //last fetched paths, reused while nothing changed on them
+    private static final Map<Path, AvatarPath> PATHS = new HashMap<>();
+    private static final Set<Path> VISITED = new HashSet<>();
+
+    //changed folders since the last fetch
+    private static final Set<Path> CHANGED = new HashSet<>();
+    private static final Map<Path, WatchKey> KEYS = new HashMap<>();
+    private static WatchService watcher;
+    private static boolean reloadAll = true;
+
+    static {
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+        } catch (Exception e) {
+            FiguraMod.LOGGER.error("Failed to initialize the avatar list watcher service", e);
+        }
+    }
+
     /**
-     * Clears out the root AvatarFolder, and regenerates it from the
-     * file system.
+     * Regenerates the whole AvatarFolder from the file system.
+     * Unchanged avatars are kept, and their metadata is not parsed again.
      */
     public static void load() {
-        //clear loaded avatars
-        ALL_AVATARS.clear();
+        reloadAll = true;
+        fetchAvatars();
+    }
+
+    /**
+     * Fetches again only the folders which changed since the last fetch.
+     * @return if anything changed
+     */
+    public static boolean update() {
+        if (!pollChanges())
+            return false;
+
+        fetchAvatars();
+        return true;
+    }
+
+    private static void fetchAvatars() {
+        VISITED.clear();
 
         //load avatars
-        FolderPath root = new FolderPath(getLocalAvatarDirectory());
-        root.fetch();
+        FolderPath root = getFolder(getLocalAvatarDirectory());
+
+        //deleted paths are forgotten as they are found, but a full fetch also knows about every path left
+        if (reloadAll)
+            PATHS.keySet().retainAll(VISITED);
+
+        CHANGED.clear();
+        reloadAll = false;
 
         //add new avatars
+        ALL_AVATARS.clear();
         ALL_AVATARS.addAll(root.getChildren());
     }
 
+    private static FolderPath getFolder(Path path) {
+        VISITED.add(path);
+
+        long modified = path.toFile().lastModified();
+        if (PATHS.get(path) instanceof FolderPath old && old.lastModified == modified && !reloadAll && !hasChanged(path))
+            return old;
+
+        FolderPath folder = new FolderPath(path, modified);
+        folder.fetch();
+        PATHS.put(path, folder);
+        addWatchKey(path);
+        return folder;
+    }
+
+    private static AvatarPath getAvatar(Path path, boolean moon) {
+        VISITED.add(path);
+
+        long modified = (moon ? path : path.resolve("avatar.json")).toFile().lastModified();
+        AvatarPath old = PATHS.get(path);
+        if (old != null && !(old instanceof FolderPath) && old.lastModified == modified)
+            return old;
+
+        AvatarPath avatar = new AvatarPath(path, modified);
+        PATHS.put(path, avatar);
+        if (!moon) addWatchKey(path);
+        return avatar;
+    }
+
+    //if anything inside this path has changed
+    private static boolean hasChanged(Path path) {
+        for (Path changed : CHANGED) {
+            if (changed.startsWith(path))
+                return true;
+        }
+        return false;
+    }
+
+    // -- watcher -- //
+
+    private static void addWatchKey(Path path) {
+        if (watcher == null || KEYS.containsKey(path))
+            return;
+
+        try {
+            KEYS.put(path, path.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY));
+        } catch (Exception e) {
+            FiguraMod.LOGGER.error("Failed to register watcher for " + path, e);
+        }
+    }
+
+    private static boolean pollChanges() {
+        //nothing to tell us about changes, so check the known paths every second
+        if (watcher == null)
+            return FiguraMod.ticks % 20 == 0 && pollModified();
+
+        boolean changed = false;
+        List<Path> deleted = new ArrayList<>();
+        Iterator<Map.Entry<Path, WatchKey>> iterator = KEYS.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, WatchKey> entry = iterator.next();
+            WatchKey key = entry.getValue();
+
+            //deleted folders, their parent folder gets notified instead
+            if (!key.isValid()) {
+                iterator.remove();
+                continue;
+            }
+
+            Path path = entry.getKey();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    reloadAll = true;
+                    changed = true;
+                    continue;
+                }
+
+                String name = event.context().toString();
+                if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE)
+                    deleted.add(path.resolve(name));
+                if (name.startsWith("."))
+                    continue;
+
+                //inside avatar folders, only the metadata matters
+                if (!(PATHS.get(path) instanceof FolderPath) && !name.equals("avatar.json"))
+                    continue;
+
+                CHANGED.add(path);
+                changed = true;
+            }
+
+            key.reset();
+        }
+
+        for (Path path : deleted)
+            prune(path);
+
+        return changed;
+    }
+
+    //compares the modified times of the known paths, as folders change when their entries do
+    private static boolean pollModified() {
+        boolean changed = false;
+        List<Path> deleted = new ArrayList<>();
+        for (Map.Entry<Path, AvatarPath> entry : PATHS.entrySet()) {
+            Path path = entry.getKey();
+            AvatarPath avatar = entry.getValue();
+            //avatar folders are checked by their metadata
+            boolean direct = avatar instanceof FolderPath || path.toString().toLowerCase().endsWith(".moon");
+            if ((direct ? path : path.resolve("avatar.json")).toFile().lastModified() == avatar.lastModified)
+                continue;
+
+            if (!Files.exists(path))
+                deleted.add(path);
+            CHANGED.add(path);
+            changed = true;
+        }
+
+        for (Path path : deleted)
+            prune(path);
+
+        return changed;
+    }
+
+    //forgets a deleted path, and everything that was inside it
+    private static void prune(Path deleted) {
+        PATHS.keySet().removeIf(path -> path.startsWith(deleted));
+
+        Iterator<Map.Entry<Path, WatchKey>> iterator = KEYS.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, WatchKey> entry = iterator.next();
+            if (entry.getKey().startsWith(deleted)) {
+                entry.getValue().cancel();
+                iterator.remove();
+            }
+        }
+    }
+
     /**
      * Loads the folder data from the disk
      * the folder data contains information about the avatar folders
@@ -62,6 +239,14 @@ public class LocalAvatarFetcher {
                 FOLDER_DATA.put(path, expanded);
             }
         });
+
+        IOUtils.readCacheFile("local_avatars", nbt -> {
+            ListTag avatarList = nbt.getList("avatars", Tag.TAG_COMPOUND);
+            for (Tag tag : avatarList) {
+                CompoundTag compound = (CompoundTag) tag;
+                METADATA.put(compound.getString("path"), new CachedMetadata(compound.getLong("modified"), compound.getString("name"), compound.getString("background")));
+            }
+        });
     }
 
     /**
@@ -80,6 +265,29 @@ public class LocalAvatarFetcher {
 
             nbt.put("folders", list);
         });
+
+        IOUtils.saveCacheFile("local_avatars", nbt -> {
+            ListTag list = new ListTag();
+
+            for (AvatarPath avatar : PATHS.values()) {
+                CachedMetadata metadata = avatar instanceof FolderPath ? null : METADATA.get(getMetadataKey(avatar.path));
+                if (metadata == null)
+                    continue;
+
+                CompoundTag compound = new CompoundTag();
+                compound.putString("path", getMetadataKey(avatar.path));
+                compound.putLong("modified", metadata.modified);
+                compound.putString("name", metadata.name);
+                compound.putString("background", metadata.background);
+                list.add(compound);
+            }
+
+            nbt.put("avatars", list);
+        });
+    }
+
+    private static String getMetadataKey(Path path) {
+        return path.toFile().getAbsolutePath();
     }
 
     /**
@@ -106,9 +314,11 @@ public class LocalAvatarFetcher {
         protected final Path path;
         protected final String name;
         protected final CardBackground background;
+        protected final long lastModified;
 
-        public AvatarPath(Path path) {
+        public AvatarPath(Path path, long lastModified) {
             this.path = path;
+            this.lastModified = lastModified;
             String filename = path.getFileName().toString();
 
             String name;
@@ -118,12 +328,19 @@ public class LocalAvatarFetcher {
                 name = filename;
                 bg = CardBackground.DEFAULT;
             } else {
+                String key = getMetadataKey(path);
+                CachedMetadata cached = METADATA.get(key);
                 try {
-                    String str = IOUtils.readFile(path.resolve("avatar.json").toFile());
-                    AvatarMetadataParser.Metadata metadata = AvatarMetadataParser.read(str);
+                    if (cached == null || cached.modified != lastModified) {
+                        String str = IOUtils.readFile(path.resolve("avatar.json").toFile());
+                        AvatarMetadataParser.Metadata metadata = AvatarMetadataParser.read(str);
 
-                    name = metadata.name == null || metadata.name.isBlank() ? filename : metadata.name;
-                    bg = CardBackground.parse(metadata.background);
+                        cached = new CachedMetadata(lastModified, metadata.name == null ? "" : metadata.name, metadata.background == null ? "" : metadata.background);
+                        METADATA.put(key, cached);
+                    }
+
+                    name = cached.name.isBlank() ? filename : cached.name;
+                    bg = CardBackground.parse(cached.background);
                 } catch (Exception e) {
                     FiguraMod.LOGGER.warn("Failed to read metadata for \"" + path + "\". Likely invalid avatar.json.");
                     name = filename;
@@ -160,8 +377,8 @@ public class LocalAvatarFetcher {
         protected final List<AvatarPath> children = new ArrayList<>();
         protected boolean expanded = true;
 
-        public FolderPath(Path path) {
-            super(path);
+        public FolderPath(Path path, long lastModified) {
+            super(path, lastModified);
 
             Boolean expanded = FOLDER_DATA.get(this.path.toFile().getAbsolutePath());
             if (expanded != null)
@@ -193,11 +410,11 @@ public class LocalAvatarFetcher {
 
                 Path metadata = path.resolve("avatar.json");
                 if (moon || (Files.exists(metadata) && !Files.isDirectory(metadata))) {
-                    children.add(new AvatarPath(path));
+                    children.add(getAvatar(path, moon));
                     found = true;
                 } else {
-                    FolderPath folder = new FolderPath(file.toPath());
-                    if (folder.fetch()) {
+                    FolderPath folder = getFolder(path);
+                    if (!folder.children.isEmpty()) {
                         children.add(folder);
                         found = true;
                     }
@@ -235,4 +452,6 @@ public class LocalAvatarFetcher {
             else FOLDER_DATA.remove(key);
         }
     }
+
+    private record CachedMetadata(long modified, String name, String background) {}
 }
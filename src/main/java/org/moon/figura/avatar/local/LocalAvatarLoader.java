@@ -70,11 +70,21 @@ public class LocalAvatarLoader {
         }
     }
 
-    protected static void async(Runnable toRun) {
+    //called from several threads, and the tasks always run one after the other
+    protected static synchronized void async(Runnable toRun) {
+        Runnable task = () -> {
+            //a failed task must not stop the ones queued after it
+            try {
+                toRun.run();
+            } catch (Exception e) {
+                FiguraMod.LOGGER.error("", e);
+            }
+        };
+
         if (tasks == null || tasks.isDone()) {
-            tasks = CompletableFuture.runAsync(toRun);
+            tasks = CompletableFuture.runAsync(task);
         } else {
-            tasks.thenRun(toRun);
+            tasks = tasks.thenRunAsync(task);
         }
     }
 
@@ -98,7 +108,7 @@ public class LocalAvatarLoader {
                 loadState++;
                 if (path.toString().endsWith(".moon")) {
                     //NbtIo already closes the file stream
-                    target.loadAvatar(NbtIo.readCompressed(new FileInputStream(path.toFile())));
+                    target.loadAvatar(NbtIo.readCompressed(new FileInputStream(path.toFile())), (int) Files.size(path));
                     return;
                 }
 
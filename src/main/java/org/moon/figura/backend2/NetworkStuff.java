@@ -2,11 +2,16 @@ package org.moon.figura.backend2;
 
 import com.google.gson.*;
 import com.mojang.datafixers.util.Pair;
+import com.mojang.math.Vector3f;
 import net.minecraft.Util;
-import net.minecraft.nbt.CompoundTag;
+import net.minecraft.client.Camera;
+import net.minecraft.client.Minecraft;
 import net.minecraft.nbt.NbtIo;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.phys.Vec3;
 import org.moon.figura.FiguraMod;
 import org.moon.figura.avatar.Avatar;
+import org.moon.figura.avatar.AvatarDataCache;
 import org.moon.figura.avatar.AvatarManager;
 import org.moon.figura.avatar.UserData;
 import org.moon.figura.avatar.local.CacheAvatarLoader;
@@ -14,10 +19,12 @@ import org.moon.figura.backend2.websocket.C2SMessageHandler;
 import org.moon.figura.backend2.websocket.WebsocketThingy;
 import org.moon.figura.config.Config;
 import org.moon.figura.gui.FiguraToast;
+import org.moon.figura.utils.EntityUtils;
 import org.moon.figura.utils.FiguraText;
 import org.moon.figura.utils.RefilledNumber;
 import org.moon.figura.utils.Version;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.net.http.HttpClient;
@@ -25,6 +32,10 @@ import java.net.http.HttpRequest;
 import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -34,10 +45,22 @@ public class NetworkStuff {
     protected static final HttpClient client = HttpClient.newHttpClient();
     protected static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
 
-    private static final LinkedList<Request<HttpAPI>> API_REQUESTS = new LinkedList<>();
-    private static final LinkedList<Request<WebsocketThingy>> WS_REQUESTS = new LinkedList<>();
+    //concurrent, as user requests queue more requests from their own threads
+    private static final Queue<Request<HttpAPI>> API_REQUESTS = new ConcurrentLinkedQueue<>();
+    private static final Queue<Request<WebsocketThingy>> WS_REQUESTS = new ConcurrentLinkedQueue<>();
     private static CompletableFuture<Void> tasks;
 
+    //requests for other users, which run concurrently, closest users first
+    private static final List<Request<HttpAPI>> USER_REQUESTS = new ArrayList<>();
+    private static final int MAX_USER_REQUESTS = 4;
+    private static final double BEHIND_CAMERA_PRIORITY = 1e12;
+    private static final AtomicInteger activeUserRequests = new AtomicInteger();
+    private static final ExecutorService USER_REQUESTS_EXECUTOR = Executors.newFixedThreadPool(MAX_USER_REQUESTS, runnable -> {
+        Thread thread = new Thread(runnable, "Figura User Requests");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private static final int RECONNECT = 6000; //5 min
     private static int authCheck = RECONNECT;
 
@@ -56,6 +79,7 @@ public class NetworkStuff {
             uploadRate = new RefilledNumber(),
             downloadRate = new RefilledNumber();
     private static int maxAvatarSize = Integer.MAX_VALUE;
+    private static boolean hasLimits = false;
 
     public static void tick() {
         AuthHandler.tick();
@@ -91,6 +115,8 @@ public class NetworkStuff {
                 }
             }
 
+            runUserRequests();
+
             if (!WS_REQUESTS.isEmpty()) {
                 Request<WebsocketThingy> request;
                 while ((request = WS_REQUESTS.poll()) != null) {
@@ -101,6 +127,53 @@ public class NetworkStuff {
         }
     }
 
+    private static void runUserRequests() {
+        synchronized (USER_REQUESTS) {
+            if (USER_REQUESTS.isEmpty() || activeUserRequests.get() >= MAX_USER_REQUESTS)
+                return;
+
+            Map<UUID, Double> priorities = new HashMap<>();
+            USER_REQUESTS.sort(Comparator.comparingDouble(request -> priorities.computeIfAbsent(request.owner, NetworkStuff::getPriority)));
+
+            Iterator<Request<HttpAPI>> iterator = USER_REQUESTS.iterator();
+            while (iterator.hasNext() && activeUserRequests.get() < MAX_USER_REQUESTS) {
+                Request<HttpAPI> request = iterator.next();
+
+                //out of downloads for now, try again on the next tick
+                if (request.download && hasLimits && !downloadRate.use())
+                    continue;
+
+                iterator.remove();
+                activeUserRequests.incrementAndGet();
+                USER_REQUESTS_EXECUTOR.execute(() -> {
+                    try {
+                        request.consumer.accept(api);
+                    } catch (Exception e) {
+                        FiguraMod.LOGGER.error("", e);
+                    } finally {
+                        activeUserRequests.decrementAndGet();
+                    }
+                });
+            }
+        }
+    }
+
+    //players in view come first, ordered by their distance to the camera,
+    //then the ones behind the camera, and lastly the ones only on the tab list
+    private static double getPriority(UUID owner) {
+        Entity entity = EntityUtils.getEntityByUUID(owner);
+        if (entity == null)
+            return Double.MAX_VALUE;
+
+        Camera camera = Minecraft.getInstance().gameRenderer.getMainCamera();
+        Vec3 offset = entity.position().subtract(camera.getPosition());
+        Vector3f look = camera.getLookVector();
+
+        double distance = offset.lengthSqr();
+        boolean inFront = offset.x * look.x() + offset.y * look.y() + offset.z * look.z() >= 0;
+        return inFront ? distance : distance + BEHIND_CAMERA_PRIORITY;
+    }
+
     protected static void async(Runnable toRun) {
         if (tasks == null || tasks.isDone()) {
             tasks = CompletableFuture.runAsync(toRun);
@@ -159,15 +232,30 @@ public class NetworkStuff {
 
 
     private static void queueString(UUID owner, Function<HttpAPI, HttpRequest> request, BiConsumer<Integer, String> consumer) {
-        API_REQUESTS.add(new Request<>(owner, api -> api.runString(request.apply(api), consumer)));
+        queue(new Request<>(owner, api -> api.runString(request.apply(api), consumer), false));
     }
 
+    //streams are only used for avatar downloads, limited by the download rate
     private static void queueStream(UUID owner, Function<HttpAPI, HttpRequest> request, BiConsumer<Integer, InputStream> consumer) {
-        API_REQUESTS.add(new Request<>(owner, api -> api.runStream(request.apply(api), consumer)));
+        queue(new Request<>(owner, api -> api.runStream(request.apply(api), consumer), true));
+    }
+
+    //our own requests keep running in order, while requests for other users run concurrently
+    private static void queue(Request<HttpAPI> request) {
+        if (request.owner.equals(Util.NIL_UUID)) {
+            API_REQUESTS.add(request);
+        } else {
+            synchronized (USER_REQUESTS) {
+                USER_REQUESTS.add(request);
+            }
+        }
     }
 
     public static void clear(UUID requestOwner) {
         API_REQUESTS.removeIf(request -> request.owner.equals(requestOwner));
+        synchronized (USER_REQUESTS) {
+            USER_REQUESTS.removeIf(request -> request.owner.equals(requestOwner));
+        }
     }
 
     private static void responseDebug(String src, int code, String data) {
@@ -224,6 +312,7 @@ public class NetworkStuff {
 
             JsonObject limits = json.getAsJsonObject("limits");
             maxAvatarSize = limits.get("maxAvatarSize").getAsInt();
+            hasLimits = true;
         });
     }
 
@@ -358,14 +447,14 @@ public class NetworkStuff {
 
             //success
             try {
-                CompoundTag nbt = NbtIo.readCompressed(stream);
-                CacheAvatarLoader.save(hash, nbt);
-                target.loadAvatar(nbt);
+                //keep the data compressed for the cache, and only decode it once
+                byte[] data = stream.readAllBytes();
+                CacheAvatarLoader.save(hash, data);
+                target.loadAvatar(AvatarDataCache.put(hash, NbtIo.readCompressed(new ByteArrayInputStream(data)), data.length));
             } catch (Exception e) {
                 FiguraMod.LOGGER.error("Failed to load avatar for " + target.id, e);
             }
         });
-        downloadRate.use();
     }
 
 
@@ -411,7 +500,7 @@ public class NetworkStuff {
             } catch (Exception e) {
                 FiguraMod.LOGGER.error("Failed to subscribe to " + id.toString(), e);
             }
-        }));
+        }, false));
     }
 
     public static void unsubscribe(UUID id) {
@@ -423,7 +512,7 @@ public class NetworkStuff {
             } catch (Exception e) {
                 FiguraMod.LOGGER.error("Failed to unsubscribe to " + id.toString(), e);
             }
-        }));
+        }, false));
     }
 
 
@@ -446,7 +535,7 @@ public class NetworkStuff {
     // -- request subclass -- //
 
 
-    private record Request<T>(UUID owner, Consumer<T> consumer) {
+    private record Request<T>(UUID owner, Consumer<T> consumer, boolean download) {
         @Override
             public boolean equals(Object o) {
                 if (this == o) return true;
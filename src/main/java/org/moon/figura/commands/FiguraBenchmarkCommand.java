@@ -0,0 +1,275 @@
+package org.moon.figura.commands;
+
+import com.mojang.blaze3d.vertex.BufferBuilder;
+import com.mojang.blaze3d.vertex.Tesselator;
+import com.mojang.blaze3d.vertex.VertexConsumer;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
+import com.mojang.brigadier.builder.RequiredArgumentBuilder;
+import com.mojang.brigadier.context.CommandContext;
+import net.fabricmc.fabric.api.client.command.v2.FabricClientCommandSource;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.VarArgFunction;
+import org.moon.figura.FiguraMod;
+import org.moon.figura.avatar.Avatar;
+import org.moon.figura.avatar.AvatarManager;
+import org.moon.figura.lua.FiguraAPIManager;
+import org.moon.figura.lua.LuaTypeManager;
+import org.moon.figura.lua.LuaWhitelist;
+import org.moon.figura.model.rendering.ImmediateAvatarRenderer;
+import org.moon.figura.utils.FiguraText;
+
+public class FiguraBenchmarkCommand {
+
+    private static final int WARMUP_ITERATIONS = 50;
+
+    public static LiteralArgumentBuilder<FabricClientCommandSource> getCommand() {
+        LiteralArgumentBuilder<FabricClientCommandSource> benchmark = LiteralArgumentBuilder.literal("benchmark");
+
+        //render
+        LiteralArgumentBuilder<FabricClientCommandSource> render = LiteralArgumentBuilder.literal("render");
+        RequiredArgumentBuilder<FabricClientCommandSource, Integer> renderIterations = RequiredArgumentBuilder.argument("iterations", IntegerArgumentType.integer(1, 10000));
+        renderIterations.executes(context -> benchmarkRender(context, IntegerArgumentType.getInteger(context, "iterations")));
+        render.executes(context -> benchmarkRender(context, 500));
+        render.then(renderIterations);
+
+        //lua
+        LiteralArgumentBuilder<FabricClientCommandSource> lua = LiteralArgumentBuilder.literal("lua");
+        RequiredArgumentBuilder<FabricClientCommandSource, Integer> luaIterations = RequiredArgumentBuilder.argument("iterations", IntegerArgumentType.integer(1, 10000000));
+        luaIterations.executes(context -> benchmarkLua(context, IntegerArgumentType.getInteger(context, "iterations")));
+        lua.executes(context -> benchmarkLua(context, 1000000));
+        lua.then(luaIterations);
+
+        //types
+        LiteralArgumentBuilder<FabricClientCommandSource> types = LiteralArgumentBuilder.literal("types");
+        RequiredArgumentBuilder<FabricClientCommandSource, Integer> typesIterations = RequiredArgumentBuilder.argument("iterations", IntegerArgumentType.integer(1, 10000));
+        typesIterations.executes(context -> benchmarkTypes(context, IntegerArgumentType.getInteger(context, "iterations")));
+        types.executes(context -> benchmarkTypes(context, 100));
+        types.then(typesIterations);
+
+        benchmark.then(render);
+        benchmark.then(lua);
+        benchmark.then(types);
+        return benchmark;
+    }
+
+    private static int benchmarkRender(CommandContext<FabricClientCommandSource> context, int iterations) {
+        Avatar avatar = AvatarManager.getAvatarForPlayer(FiguraMod.getLocalPlayerUUID());
+        if (avatar == null || !(avatar.renderer instanceof ImmediateAvatarRenderer renderer)) {
+            context.getSource().sendError(FiguraText.of("command.benchmark.no_avatar"));
+            return 0;
+        }
+
+        BufferBuilder builder = Tesselator.getInstance().getBuilder();
+        VertexConsumer perVertex = new ForwardingConsumer(builder);
+
+        //warmup both paths before timing anything
+        int vertices = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            vertices = renderer.benchmarkVertices(builder, builder);
+            renderer.benchmarkVertices(builder, perVertex);
+        }
+
+        if (vertices == 0) {
+            context.getSource().sendError(FiguraText.of("command.benchmark.no_avatar"));
+            return 0;
+        }
+
+        double bulk = timeVertices(renderer, builder, builder, iterations, vertices);
+        double single = timeVertices(renderer, builder, perVertex, iterations, vertices);
+
+        context.getSource().sendFeedback(FiguraText.of("command.benchmark.render", vertices, iterations, String.format("%.2f", bulk), String.format("%.2f", single)));
+        return 1;
+    }
+
+    private static int benchmarkLua(CommandContext<FabricClientCommandSource> context, int iterations) {
+        LuaTypeManager typeManager = new LuaTypeManager();
+        VarArgFunction fixed, spread, fail, error;
+        try {
+            fixed = typeManager.getWrapper(LuaTarget.class.getMethod("sum", double.class, double.class, double.class));
+            spread = typeManager.getWrapper(LuaTarget.class.getMethod("sum", double.class, double.class, double.class, double.class, double.class, double.class));
+            fail = typeManager.getWrapper(LuaTarget.class.getMethod("fail"));
+            error = typeManager.getWrapper(LuaTarget.class.getMethod("error"));
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+
+        Varargs fixedArgs = LuaValue.varargsOf(new LuaValue[]{LuaValue.valueOf(1), LuaValue.valueOf(2), LuaValue.valueOf(3)});
+        Varargs spreadArgs = LuaValue.varargsOf(new LuaValue[]{LuaValue.valueOf(1), LuaValue.valueOf(2), LuaValue.valueOf(3), LuaValue.valueOf(4), LuaValue.valueOf(5), LuaValue.valueOf(6)});
+
+        //check the bridge behaviour before timing it
+        String failed = null;
+        if (fixed.invoke(fixedArgs).todouble(1) != 6)
+            failed = "fixed arity call";
+        else if (spread.invoke(spreadArgs).todouble(1) != 21)
+            failed = "spread call";
+        else if (!throwsLuaError(fail))
+            failed = "exception conversion";
+        else if (!throwsError(error))
+            failed = "error rethrow";
+
+        if (failed != null) {
+            context.getSource().sendError(FiguraText.of("command.benchmark.lua_check", failed));
+            return 0;
+        }
+
+        for (int i = 0; i < WARMUP_ITERATIONS * 1000; i++) {
+            fixed.invoke(fixedArgs);
+            spread.invoke(spreadArgs);
+        }
+
+        double fixedTime = timeCalls(fixed, fixedArgs, iterations);
+        double spreadTime = timeCalls(spread, spreadArgs, iterations);
+
+        context.getSource().sendFeedback(FiguraText.of("command.benchmark.lua", iterations, String.format("%.2f", fixedTime), String.format("%.2f", spreadTime)));
+        return 1;
+    }
+
+    private static int benchmarkTypes(CommandContext<FabricClientCommandSource> context, int iterations) {
+        //the method scans are shared, so only the first manager pays for them
+        long start = System.nanoTime();
+        int classes = setupTypes();
+        long first = System.nanoTime() - start;
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++)
+            setupTypes();
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+            setupTypes();
+        double perRuntime = (System.nanoTime() - start) / (double) iterations;
+
+        context.getSource().sendFeedback(FiguraText.of("command.benchmark.types", classes, String.format("%.3f", first / 1e6), String.format("%.3f", perRuntime / 1e6)));
+        return 1;
+    }
+
+    //the same metatables every avatar runtime builds when it loads
+    private static int setupTypes() {
+        LuaTypeManager typeManager = new LuaTypeManager();
+        for (Class<?> clazz : FiguraAPIManager.WHITELISTED_CLASSES)
+            typeManager.generateMetatableFor(clazz);
+        typeManager.dumpMetatables(new LuaTable());
+        return FiguraAPIManager.WHITELISTED_CLASSES.size();
+    }
+
+    private static boolean throwsLuaError(VarArgFunction function) {
+        try {
+            function.invoke(LuaValue.NONE);
+            return false;
+        } catch (LuaError e) {
+            return e.getCause() instanceof IllegalStateException;
+        }
+    }
+
+    private static boolean throwsError(VarArgFunction function) {
+        try {
+            function.invoke(LuaValue.NONE);
+            return false;
+        } catch (LuaError e) {
+            return false;
+        } catch (AssertionError e) {
+            return true;
+        }
+    }
+
+    //nanoseconds per call
+    private static double timeCalls(VarArgFunction function, Varargs args, int iterations) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+            function.invoke(args);
+        return (System.nanoTime() - start) / (double) iterations;
+    }
+
+    //nanoseconds per vertex
+    private static double timeVertices(ImmediateAvatarRenderer renderer, BufferBuilder builder, VertexConsumer consumer, int iterations, int vertices) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+            renderer.benchmarkVertices(builder, consumer);
+        return (System.nanoTime() - start) / ((double) iterations * vertices);
+    }
+
+    /**
+     * Whitelisted methods for the Lua bridge benchmark, one under and one above the fixed arity limit.
+     */
+    @LuaWhitelist
+    public static class LuaTarget {
+        @LuaWhitelist
+        public static double sum(double a, double b, double c) {
+            return a + b + c;
+        }
+
+        @LuaWhitelist
+        public static double sum(double a, double b, double c, double d, double e, double f) {
+            return a + b + c + d + e + f;
+        }
+
+        @LuaWhitelist
+        public static void fail() {
+            throw new IllegalStateException("benchmark");
+        }
+
+        @LuaWhitelist
+        public static void error() {
+            throw new AssertionError("benchmark");
+        }
+    }
+
+    /**
+     * Hides the builder behind a plain consumer, so the kernel takes the per vertex path.
+     */
+    private record ForwardingConsumer(VertexConsumer consumer) implements VertexConsumer {
+        @Override
+        public VertexConsumer vertex(double x, double y, double z) {
+            consumer.vertex(x, y, z);
+            return this;
+        }
+
+        @Override
+        public VertexConsumer color(int red, int green, int blue, int alpha) {
+            consumer.color(red, green, blue, alpha);
+            return this;
+        }
+
+        @Override
+        public VertexConsumer uv(float u, float v) {
+            consumer.uv(u, v);
+            return this;
+        }
+
+        @Override
+        public VertexConsumer overlayCoords(int u, int v) {
+            consumer.overlayCoords(u, v);
+            return this;
+        }
+
+        @Override
+        public VertexConsumer uv2(int u, int v) {
+            consumer.uv2(u, v);
+            return this;
+        }
+
+        @Override
+        public VertexConsumer normal(float x, float y, float z) {
+            consumer.normal(x, y, z);
+            return this;
+        }
+
+        @Override
+        public void endVertex() {
+            consumer.endVertex();
+        }
+
+        @Override
+        public void defaultColor(int red, int green, int blue, int alpha) {
+            consumer.defaultColor(red, green, blue, alpha);
+        }
+
+        @Override
+        public void unsetDefaultColor() {
+            consumer.unsetDefaultColor();
+        }
+    }
+}
@@ -32,6 +32,12 @@ public class FiguraCommands {
         //debug
         root.then(FiguraDebugCommand.getCommand());
 
+        //profile
+        root.then(FiguraProfileCommand.getCommand());
+
+        //benchmark
+        root.then(FiguraBenchmarkCommand.getCommand());
+
         //backend debug
         if (FiguraMod.DEBUG_MODE)
             root.then(BackendCommands.getCommand());
@@ -209,6 +209,14 @@ public class FiguraDebugCommand {
 
         a.add("instructions", inst);
 
+        //load stages, in milliseconds
+        JsonObject loadTimes = new JsonObject();
+
+        for (Map.Entry<String, Long> entry : avatar.loadTimes.entrySet())
+            loadTimes.addProperty(entry.getKey(), entry.getValue());
+
+        a.add("loadTimes", loadTimes);
+
         //sounds
         JsonArray sounds = new JsonArray();
 
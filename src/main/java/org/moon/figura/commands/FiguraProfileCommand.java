@@ -0,0 +1,58 @@
+package org.moon.figura.commands;
+
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.arguments.StringArgumentType;
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
+import com.mojang.brigadier.builder.RequiredArgumentBuilder;
+import com.mojang.brigadier.context.CommandContext;
+import net.fabricmc.fabric.api.client.command.v2.FabricClientCommandSource;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.multiplayer.ClientPacketListener;
+import net.minecraft.client.multiplayer.PlayerInfo;
+import org.moon.figura.FiguraMod;
+import org.moon.figura.avatar.Avatar;
+import org.moon.figura.avatar.AvatarManager;
+import org.moon.figura.avatar.AvatarProfiler;
+import org.moon.figura.utils.FiguraText;
+
+import java.util.UUID;
+
+public class FiguraProfileCommand {
+
+    public static LiteralArgumentBuilder<FabricClientCommandSource> getCommand() {
+        LiteralArgumentBuilder<FabricClientCommandSource> profile = LiteralArgumentBuilder.literal("profile");
+
+        RequiredArgumentBuilder<FabricClientCommandSource, String> player = RequiredArgumentBuilder.argument("player", StringArgumentType.word());
+        RequiredArgumentBuilder<FabricClientCommandSource, Integer> seconds = RequiredArgumentBuilder.argument("seconds", IntegerArgumentType.integer(1, 300));
+        seconds.executes(FiguraProfileCommand::startProfiling);
+
+        return profile.then(player.then(seconds));
+    }
+
+    private static int startProfiling(CommandContext<FabricClientCommandSource> context) {
+        String name = StringArgumentType.getString(context, "player");
+        int seconds = IntegerArgumentType.getInteger(context, "seconds");
+
+        UUID uuid = getPlayerUUID(name);
+        Avatar avatar = uuid == null ? null : AvatarManager.getAvatarForPlayer(uuid);
+        if (avatar == null || avatar.luaRuntime == null) {
+            context.getSource().sendError(FiguraText.of("command.profile.no_script", name));
+            return 0;
+        }
+
+        if (avatar.profiler != null) {
+            context.getSource().sendError(FiguraText.of("command.profile.running", name));
+            return 0;
+        }
+
+        avatar.profiler = new AvatarProfiler(name, seconds);
+        context.getSource().sendFeedback(FiguraText.of("command.profile.start", name, seconds));
+        return 1;
+    }
+
+    private static UUID getPlayerUUID(String name) {
+        ClientPacketListener connection = Minecraft.getInstance().getConnection();
+        PlayerInfo info = connection == null ? null : connection.getPlayerInfo(name);
+        return info != null ? info.getProfile().getId() : FiguraMod.playerNameToUUID(name);
+    }
+}
@@ -9,7 +9,9 @@ import net.minecraft.client.Options;
 import net.minecraft.client.multiplayer.resolver.ServerAddress;
 import net.minecraft.network.chat.Component;
 import org.moon.figura.FiguraMod;
+import org.moon.figura.avatar.AvatarDataCache;
 import org.moon.figura.avatar.AvatarManager;
+import org.moon.figura.avatar.local.CacheAvatarLoader;
 import org.moon.figura.backend2.NetworkStuff;
 import org.moon.figura.lua.FiguraLuaPrinter;
 import org.moon.figura.utils.ColorUtils;
@@ -121,6 +123,22 @@ public enum Config {
         }
     },
     EASTER_EGGS(true),
+    AVATAR_CACHE_SIZE(256, InputType.POSITIVE_INT) {
+        @Override
+        public void onChange() {
+            super.onChange();
+            CacheAvatarLoader.trim();
+        }
+    },
+    AVATAR_DATA_CACHE_SIZE(128, InputType.POSITIVE_INT) {
+        @Override
+        public void onChange() {
+            super.onChange();
+            AvatarDataCache.trim();
+        }
+    },
+    REDUCED_DETAIL_EVENT_INTERVAL(4, InputType.POSITIVE_INT),
+    REDUCED_DETAIL_COMPLEXITY_DIVISOR(4, InputType.POSITIVE_INT),
 
     Dev {{this.name = this.name.copy().withStyle(ChatFormatting.RED);}},
     CONNECTION_TOASTS(true),
@@ -130,6 +148,14 @@ public enum Config {
                 FiguraText.of(tooltip + ".cubes").setStyle(ColorUtils.Colors.FRAN_PINK.style),
                 FiguraText.of(tooltip + ".groups").setStyle(ColorUtils.Colors.MAYA_BLUE.style));
     }},
+    AVATAR_RENDERER(0, 2) {
+        @Override
+        public void onChange() {
+            super.onChange();
+            AvatarManager.reloadAllAvatars();
+        }
+    },
+    PARALLEL_TICK(false),
     LOG_OTHERS(false),
     LOG_PINGS(0, 3),
     SYNC_PINGS(false) {{
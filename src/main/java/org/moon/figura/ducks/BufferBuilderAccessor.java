@@ -0,0 +1,16 @@
+package org.moon.figura.ducks;
+
+import com.mojang.blaze3d.vertex.VertexFormat;
+
+import java.nio.ByteBuffer;
+
+public interface BufferBuilderAccessor {
+
+    /**
+     * Reserves space for whole vertices, to be written directly into the builder buffer.
+     * @return the byte offset of the first reserved vertex, or -1 if the builder is not building quads in the given format,
+     * has a default color set, or is in the middle of a vertex
+     */
+    int reserveVertices(VertexFormat format, int count);
+    ByteBuffer getByteBuffer();
+}
@@ -82,6 +82,15 @@ public abstract class AbstractAvatarWidget extends AbstractContainerElement impl
         return Component.literal(avatar.getName());
     }
 
+    public LocalAvatarFetcher.AvatarPath getAvatar() {
+        return avatar;
+    }
+
+    //if this entry can no longer show the given avatar, as it changed on disk
+    public boolean isOutdated(LocalAvatarFetcher.AvatarPath avatar) {
+        return this.avatar != avatar && !(this instanceof AvatarFolderWidget && avatar instanceof LocalAvatarFetcher.FolderPath);
+    }
+
     public void setPos(int x, int y) {
         this.x = x;
         this.y = y;
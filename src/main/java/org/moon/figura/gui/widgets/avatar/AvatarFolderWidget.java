@@ -46,6 +46,7 @@ public class AvatarFolderWidget extends AbstractAvatarWidget {
     }
 
     public void update(LocalAvatarFetcher.FolderPath avatar, String filter) {
+        this.avatar = avatar;
         this.filter = filter.toLowerCase();
         for (AbstractAvatarWidget value : entries.values())
             value.filter = this.filter;
@@ -59,6 +60,11 @@ public class AvatarFolderWidget extends AbstractAvatarWidget {
             if (!child.search(filter))
                 continue;
 
+            //remove changed children, to be created again
+            AbstractAvatarWidget current = entries.get(str);
+            if (current != null && current.isOutdated(child))
+                children.remove(entries.remove(str));
+
             //update children
             if (entries.get(str) instanceof AvatarFolderWidget folder)
                 folder.update((LocalAvatarFetcher.FolderPath) child, filter);
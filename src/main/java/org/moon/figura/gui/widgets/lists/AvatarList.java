@@ -7,7 +7,6 @@ import net.minecraft.Util;
 import net.minecraft.client.gui.components.events.GuiEventListener;
 import net.minecraft.network.chat.Component;
 import net.minecraft.util.Mth;
-import org.moon.figura.FiguraMod;
 import org.moon.figura.avatar.local.LocalAvatarFetcher;
 import org.moon.figura.gui.widgets.TextField;
 import org.moon.figura.gui.widgets.TexturedButton;
@@ -34,6 +33,7 @@ public class AvatarList extends AbstractList {
 
     private int totalHeight = 0;
     private String filter = "";
+    private String loadedFilter = "";
 
     public static AvatarWidget selectedEntry;
 
@@ -83,10 +83,9 @@ public class AvatarList extends AbstractList {
     // -- Functions -- //
     @Override
     public void tick() {
-        //update list
-        if (FiguraMod.ticks % 20 == 0)
-            LocalAvatarFetcher.load();
-        loadContents();
+        //update list, only when something changed
+        if (LocalAvatarFetcher.update() || !filter.equals(loadedFilter))
+            loadContents();
         super.tick();
     }
 
@@ -131,6 +130,8 @@ public class AvatarList extends AbstractList {
     }
 
     private void loadContents() {
+        loadedFilter = filter;
+
         // Load avatars //
         HashSet<Path> missingPaths = new HashSet<>(avatars.keySet());
         for (LocalAvatarFetcher.AvatarPath avatar : LocalAvatarFetcher.ALL_AVATARS) {
@@ -140,6 +141,14 @@ public class AvatarList extends AbstractList {
             if (!avatar.search(filter))
                 continue;
 
+            //remove changed avatars, to be created again
+            AbstractAvatarWidget current = avatars.get(path);
+            if (current != null && current.isOutdated(avatar)) {
+                avatars.remove(path);
+                avatarList.remove(current);
+                children.remove(current);
+            }
+
             //update current
             if (avatars.get(path) instanceof AvatarFolderWidget folder)
                 folder.update((LocalAvatarFetcher.FolderPath) avatar, filter);
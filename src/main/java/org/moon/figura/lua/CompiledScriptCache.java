@@ -0,0 +1,87 @@
+package org.moon.figura.lua;
+
+import com.google.common.hash.Hashing;
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaClosure;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Prototype;
+import org.luaj.vm2.compiler.LuaC;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compiled avatar scripts shared by every avatar, so the same sources are only compiled once,
+ * no matter how many times they are loaded. Prototypes are immutable, so each runtime
+ * only needs to create its own closure from it.
+ * One-off chunks, like commands and animation code, are compiled by the runtime instead.
+ */
+public class CompiledScriptCache {
+
+    //bounded by the source length, as the prototypes grow with it
+    private static final long MAX_SOURCE_LENGTH = 16 * 1024 * 1024;
+
+    //least recently used entries are dropped first
+    private static final Map<String, CachedPrototype> CACHE = new LinkedHashMap<>(16, 0.75f, true);
+    private static long totalLength;
+
+    //compiler used for the scripts compiled ahead of time, outside any runtime
+    private static final Globals COMPILER = new Globals();
+    static {
+        LuaC.install(COMPILER);
+    }
+
+    public static LuaClosure load(Globals globals, String src, String name, LuaValue env) {
+        return new LuaClosure(getPrototype(globals, src, name), env);
+    }
+
+    /**
+     * Compiles a script into the cache, from any thread, so loading it later is only a lookup.
+     * Syntax errors are ignored here, as they are reported when the script is loaded.
+     */
+    public static void compile(String src, String name) {
+        try {
+            getPrototype(COMPILER, src, name);
+        } catch (LuaError ignored) {}
+    }
+
+    private static Prototype getPrototype(Globals globals, String src, String name) {
+        //the chunk name is part of the prototype, used on error messages
+        String key = name + ":" + Hashing.sha256().hashString(src, StandardCharsets.UTF_8);
+
+        synchronized (CACHE) {
+            CachedPrototype cached = CACHE.get(key);
+            if (cached != null)
+                return cached.prototype;
+        }
+
+        Prototype prototype;
+        try {
+            prototype = globals.compilePrototype(new StringReader(src), name);
+        } catch (IOException e) {
+            throw new LuaError("load " + name + ": " + e);
+        }
+
+        synchronized (CACHE) {
+            CachedPrototype old = CACHE.put(key, new CachedPrototype(prototype, src.length()));
+            if (old != null)
+                totalLength -= old.length;
+            totalLength += src.length();
+
+            Iterator<CachedPrototype> iterator = CACHE.values().iterator();
+            while (totalLength > MAX_SOURCE_LENGTH && iterator.hasNext()) {
+                totalLength -= iterator.next().length;
+                iterator.remove();
+            }
+        }
+
+        return prototype;
+    }
+
+    private record CachedPrototype(Prototype prototype, int length) {}
+}
@@ -25,17 +25,29 @@ import java.util.function.Function;
 
 public class FiguraLuaPrinter {
 
-    public static DecimalFormat df;
-    static {
-        updateDecimalFormatting();
-    }
+    //DecimalFormat is not thread safe, and scripts can print from the parallel tick
+    private static volatile int formatVersion;
+    private static final ThreadLocal<VersionedFormat> FORMAT = new ThreadLocal<>();
 
     public static void updateDecimalFormatting() {
-        int config = Config.LOG_NUMBER_LENGTH.asInt();
-        df = new DecimalFormat("0" + (config > 0 ? "." + "#".repeat(config) : ""));
-        df.setRoundingMode(RoundingMode.DOWN);
+        formatVersion++;
+    }
+
+    public static String formatNumber(double d) {
+        VersionedFormat format = FORMAT.get();
+        int version = formatVersion;
+        if (format == null || format.version != version) {
+            int config = Config.LOG_NUMBER_LENGTH.asInt();
+            DecimalFormat df = new DecimalFormat("0" + (config > 0 ? "." + "#".repeat(config) : ""));
+            df.setRoundingMode(RoundingMode.DOWN);
+            format = new VersionedFormat(df, version);
+            FORMAT.set(format);
+        }
+        return format.format.format(d);
     }
 
+    private record VersionedFormat(DecimalFormat format, int version) {}
+
     public static void loadPrintFunctions(FiguraLuaRuntime runtime) {
         LuaValue print = PRINT_FUNCTION.apply(runtime);
         runtime.setGlobal("print", print);
@@ -113,7 +125,10 @@ public class FiguraLuaPrinter {
                 .append(Component.literal(" : " + message).withStyle(ColorUtils.Colors.LUA_ERROR.style))
                 .append(Component.literal("\n"));
 
-        chatQueue.offer(component); //bypass the char limit filter
+        //bypass the char limit filter
+        synchronized (FiguraLuaPrinter.class) {
+            chatQueue.offer(component);
+        }
         FiguraMod.LOGGER.error("", error);
     }
 
@@ -312,7 +327,7 @@ public class FiguraLuaPrinter {
         //format value
         if (!(value instanceof LuaString) && value.isnumber()) {
             Double d = value.checkdouble();
-            ret = d == Math.rint(d) ? value.tojstring() : df.format(d);
+            ret = d == Math.rint(d) ? value.tojstring() : formatNumber(d);
         } else {
             ret = value.tojstring();
             if (value.isstring() && quoteStrings)
@@ -362,7 +377,7 @@ public class FiguraLuaPrinter {
      * @param message to send
      * @throws org.luaj.vm2.LuaError if the message could not fit in the queue
      */
-    private static void sendLuaChatMessage(Component message) throws LuaError {
+    private static synchronized void sendLuaChatMessage(Component message) throws LuaError {
         charsQueued += message.getString().length();
         if (charsQueued > MAX_CHARS_QUEUED) {
             chatQueue.clear();
@@ -372,11 +387,11 @@ public class FiguraLuaPrinter {
         chatQueue.offer(message);
     }
 
-    public static void clearPrintQueue() {
+    public static synchronized void clearPrintQueue() {
         chatQueue.clear();
     }
 
-    public static void printChatFromQueue() {
+    public static synchronized void printChatFromQueue() {
         if (chatQueue.isEmpty())
             return;
 
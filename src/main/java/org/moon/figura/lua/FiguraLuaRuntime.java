@@ -10,6 +10,7 @@ import org.luaj.vm2.lib.jse.JseBaseLib;
 import org.luaj.vm2.lib.jse.JseMathLib;
 import org.moon.figura.FiguraMod;
 import org.moon.figura.avatar.Avatar;
+import org.moon.figura.avatar.AvatarProfiler;
 import org.moon.figura.lua.api.AvatarAPI;
 import org.moon.figura.lua.api.HostAPI;
 import org.moon.figura.lua.api.RendererAPI;
@@ -28,6 +29,7 @@ import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Stack;
+import java.util.WeakHashMap;
 import java.util.function.Function;
 
 /**
@@ -53,7 +55,6 @@ public class FiguraLuaRuntime {
 
     public final Avatar owner;
     private final Globals userGlobals = new Globals();
-    private final LuaValue setHookFunction;
     protected final Map<String, String> scripts = new HashMap<>();
     private final Map<String, Varargs> loadedScripts = new HashMap<>();
     private final Stack<String> loadingScripts = new Stack<>();
@@ -72,8 +73,8 @@ public class FiguraLuaRuntime {
 
         LuaC.install(userGlobals);
 
-        userGlobals.load(new DebugLib());
-        setHookFunction = userGlobals.get("debug").get("sethook");
+        //the interpreter only reports instructions while the debug lib is loaded
+        userGlobals.load(instructionCounter);
 
         setupFiguraSandbox();
 
@@ -88,7 +89,12 @@ public class FiguraLuaRuntime {
     }
 
     public LuaValue run(String name, String src) {
-        return userGlobals.load(src, name, userGlobals).call();
+        return load(name, src).call();
+    }
+
+    //one-off chunks, so they stay out of the shared script cache
+    public LuaFunction load(String name, String src) {
+        return userGlobals.load(src, name, userGlobals).checkfunction();
     }
 
     public void registerClass(Class<?> clazz) {
@@ -122,7 +128,7 @@ public class FiguraLuaRuntime {
         //actual sandbox file
         try (InputStream inputStream = FiguraMod.class.getResourceAsStream("/assets/" + FiguraMod.MOD_ID + "/scripts/sandbox.lua")) {
             if (inputStream == null) throw new IOException("Unable to get resource");
-            userGlobals.load(new String(inputStream.readAllBytes()), "sandbox").call();
+            CompiledScriptCache.load(userGlobals, new String(inputStream.readAllBytes()), "sandbox", userGlobals).call();
         } catch (Exception e) {
             error(new LuaError("Failed to load builtin sandbox script:\n" + e.getMessage()));
         }
@@ -150,6 +156,7 @@ public class FiguraLuaRuntime {
         @Override
         public Varargs invoke(Varargs args) {
             try {
+                //not cached, as these are usually built at runtime and would only push the avatar scripts out of the cache
                 return runtime.userGlobals.load(args.arg(1).checkjstring(), "loadstring", runtime.userGlobals);
             } catch (LuaError e) {
                 return varargsOf(NIL, e.getMessageObject());
@@ -179,7 +186,7 @@ public class FiguraLuaRuntime {
         //load math library
         try (InputStream inputStream = FiguraMod.class.getResourceAsStream("/assets/" + FiguraMod.MOD_ID + "/scripts/math.lua")) {
             if (inputStream == null) throw new IOException("Unable to get resource");
-            userGlobals.load(new String(inputStream.readAllBytes()), "math").call();
+            CompiledScriptCache.load(userGlobals, new String(inputStream.readAllBytes()), "math", userGlobals).call();
         } catch (Exception e) {
             error(new LuaError("Failed to load builtin math script:\n" + e.getMessage()));
         }
@@ -248,7 +255,7 @@ public class FiguraLuaRuntime {
         this.loadingScripts.push(name);
 
         //load
-        Varargs value = userGlobals.load(src, name).invoke(LuaValue.valueOf(name));
+        Varargs value = CompiledScriptCache.load(userGlobals, src, name, userGlobals).invoke(LuaValue.valueOf(name));
         if (value == LuaValue.NIL)
             value = LuaValue.TRUE;
 
@@ -293,21 +300,118 @@ public class FiguraLuaRuntime {
 
     // avatar limiting //
 
-    private final ZeroArgFunction onReachedLimit = new ZeroArgFunction() {
-        @Override
-        public LuaValue call() {
-            FiguraMod.LOGGER.warn("Avatar {} bypassed resource limits with {} instructions", owner.owner, getInstructions());
-            LuaError error = new LuaError("Script overran resource limits!");
-            setInstructionLimit(1);
-            throw error;
-        }
-    };
+    private int instructionLimit;
+    private final InstructionCounter instructionCounter = new InstructionCounter();
+
     public void setInstructionLimit(int limit) {
-        userGlobals.running.state.bytecodes = 0;
-        setHookFunction.invoke(LuaValue.varargsOf(onReachedLimit, LuaValue.EMPTYSTRING, LuaValue.valueOf(Math.max(limit, 1))));
+        instructionLimit = Math.max(limit, 1);
+        instructionCounter.instructions = 0;
+        instructionCounter.lastVarargs = null;
+        //while profiling, the call stack is also sampled every few instructions
+        if (owner.profiler != null) {
+            instructionCounter.nextCheck = Math.min(AvatarProfiler.SAMPLE_INTERVAL, instructionLimit);
+        } else {
+            instructionCounter.nextCheck = instructionLimit;
+            instructionCounter.clearCallStacks();
+        }
     }
 
     public int getInstructions() {
-        return userGlobals.running.state.bytecodes;
+        return instructionCounter.instructions;
+    }
+
+    private void onReachedCheck() {
+        InstructionCounter counter = instructionCounter;
+        if (counter.instructions < instructionLimit) {
+            AvatarProfiler profiler = owner.profiler;
+            if (profiler != null)
+                counter.getCallStack().sample(profiler, counter.instructions);
+
+            counter.nextCheck = Math.min(counter.instructions + AvatarProfiler.SAMPLE_INTERVAL, instructionLimit);
+            return;
+        }
+
+        FiguraMod.LOGGER.warn("Avatar {} bypassed resource limits with {} instructions", owner.owner, getInstructions());
+        setInstructionLimit(1);
+        throw new LuaError("Script overran resource limits!");
+    }
+
+    /**
+     * Counts the instructions with a plain counter, instead of the debug hooks checked on every instruction.
+     * The call stack is only told about the current instruction when it is actually read,
+     * on calls and tracebacks, so the line numbers from error messages are kept.
+     * Instructions from every coroutine are counted, unlike the old hook which was only set on the main thread.
+     */
+    private class InstructionCounter extends DebugLib {
+        private int instructions, nextCheck;
+
+        //the last instruction, and the coroutine which ran it, as each coroutine has its own call stack
+        private LuaThread lastThread;
+        private int lastPc;
+        private Varargs lastVarargs;
+        private int lastTop;
+
+        //the lua functions run by each coroutine, only kept while profiling
+        private final Map<LuaThread, AvatarProfiler.CallStack> callStacks = new WeakHashMap<>();
+        private LuaThread stackThread;
+        private AvatarProfiler.CallStack stack;
+
+        @Override
+        public void onInstruction(int pc, Varargs v, int top) {
+            lastThread = userGlobals.running;
+            lastPc = pc;
+            lastVarargs = v;
+            lastTop = top;
+
+            if (++instructions >= nextCheck)
+                onReachedCheck();
+        }
+
+        @Override
+        public void onCall(LuaClosure c, Varargs varargs, LuaValue[] stack) {
+            //the caller frame needs its current line before the new frame is added
+            updateCallStack();
+            super.onCall(c, varargs, stack);
+
+            if (owner.profiler != null)
+                getCallStack().push(c.p);
+        }
+
+        @Override
+        public void onReturn() {
+            //the returning frame is gone, the caller sets its line again on its next instruction
+            lastVarargs = null;
+            super.onReturn();
+
+            if (owner.profiler != null)
+                getCallStack().pop();
+        }
+
+        @Override
+        public String traceback(int level) {
+            updateCallStack();
+            return super.traceback(level);
+        }
+
+        private AvatarProfiler.CallStack getCallStack() {
+            LuaThread running = userGlobals.running;
+            if (running != stackThread) {
+                stackThread = running;
+                stack = callStacks.computeIfAbsent(running, thread -> new AvatarProfiler.CallStack());
+            }
+            return stack;
+        }
+
+        private void clearCallStacks() {
+            callStacks.clear();
+            stackThread = null;
+            stack = null;
+        }
+
+                private void updateCallStack() {
+            //after a resume or yield the instruction belongs to another coroutine, which updates its own frame on its next instruction
+            if (lastVarargs != null && lastThread == userGlobals.running)
+                super.onInstruction(lastPc, lastVarargs, lastTop);
+        }
     }
 }
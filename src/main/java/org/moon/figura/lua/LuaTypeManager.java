@@ -7,18 +7,26 @@ import org.luaj.vm2.lib.VarArgFunction;
 import org.moon.figura.lua.docs.FiguraDocsManager;
 import org.moon.figura.lua.docs.LuaTypeDoc;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.*;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * One LuaTypeManager per LuaRuntime, so that people can be allowed to edit the metatables within.
+ * The reflection behind them is shared between all the runtimes.
+ * The wrapper functions convert their results using the metatables of their own runtime, so they are only shared
+ * within it, between every metatable containing the same method.
  */
 public class LuaTypeManager {
 
+    private static final Map<Class<?>, List<MethodDescriptor>> DESCRIPTORS = new ConcurrentHashMap<>();
+    private static final Map<Method, MethodDescriptor> METHODS = new ConcurrentHashMap<>();
+
     private final Map<Class<?>, LuaTable> metatables = new HashMap<>();
+    private final Map<MethodDescriptor, VarArgFunction> wrappers = new HashMap<>();
 
     public void generateMetatableFor(Class<?> clazz) {
         if (metatables.containsKey(clazz))
@@ -34,36 +42,29 @@ public class LuaTypeManager {
         LuaTable metatable = new LuaTable();
 
         LuaTable indexTable = new LuaTable();
-        Class<?> currentClass = clazz;
-        while (currentClass.isAnnotationPresent(LuaWhitelist.class)) {
-            for (Method method : currentClass.getDeclaredMethods()) {
-                if (!method.isAnnotationPresent(LuaWhitelist.class)) {
-                    continue;
-                }
-                String name = method.getName();
-                if (name.startsWith("__")) { //metamethods
-                    if (metatable.rawget(name) == LuaValue.NIL) { //Only add the most recently declared metamethod, in the most specific subclass.
-                        if (name.equals("__index")) {
-                            //Custom __index implementation. First checks the regular __index table, and if it gets NIL, then calls the custom-defined __index function.
-                            metatable.set("__index", new TwoArgFunction() {
-                                final LuaFunction wrappedIndexer = getWrapper(method);
-                                @Override
-                                public LuaValue call(LuaValue arg1, LuaValue arg2) {
-                                    LuaValue result = indexTable.get(arg2);
-                                    if (result == LuaValue.NIL)
-                                        result = wrappedIndexer.call(arg1, arg2);
-                                    return result;
-                                }
-                            });
-                        } else {
-                            metatable.set(name, getWrapper(method));
-                        }
+        for (MethodDescriptor descriptor : getDescriptors(clazz)) {
+            String name = descriptor.name;
+            if (name.startsWith("__")) { //metamethods
+                if (metatable.rawget(name) == LuaValue.NIL) { //Only add the most recently declared metamethod, in the most specific subclass.
+                    if (name.equals("__index")) {
+                        //Custom __index implementation. First checks the regular __index table, and if it gets NIL, then calls the custom-defined __index function.
+                        metatable.set("__index", new TwoArgFunction() {
+                            final LuaFunction wrappedIndexer = getWrapper(descriptor);
+                            @Override
+                            public LuaValue call(LuaValue arg1, LuaValue arg2) {
+                                LuaValue result = indexTable.get(arg2);
+                                if (result == LuaValue.NIL)
+                                    result = wrappedIndexer.call(arg1, arg2);
+                                return result;
+                            }
+                        });
+                    } else {
+                        metatable.set(name, getWrapper(descriptor));
                     }
-                } else { //regular methods
-                    indexTable.set(name, getWrapper(method));
                 }
+            } else { //regular methods
+                indexTable.set(name, getWrapper(descriptor));
             }
-            currentClass = currentClass.getSuperclass();
         }
 
         if (metatable.rawget("__index") == LuaValue.NIL)
@@ -104,90 +105,77 @@ public class LuaTypeManager {
         }
     }
 
-    private final Map<Class<?>, String> namesCache = new HashMap<>();
+    private static final Map<Class<?>, String> NAMES_CACHE = new ConcurrentHashMap<>();
     public String getTypeName(Class<?> clazz) {
-        return namesCache.computeIfAbsent(clazz, someClass -> {
+        return NAMES_CACHE.computeIfAbsent(clazz, someClass -> {
             if (someClass.isAnnotationPresent(LuaTypeDoc.class))
                 return someClass.getAnnotation(LuaTypeDoc.class).name();
             return someClass.getSimpleName();
         });
     }
 
-    private static boolean[] getRequiredNotNil(Method method) {
-        Parameter[] params = method.getParameters();
-        boolean[] result = new boolean[params.length];
-        for (int i = 0; i < params.length; i++)
-            if (params[i].isAnnotationPresent(LuaNotNil.class))
-                result[i] = true;
-        return result;
+    /**
+     * Gets the whitelisted methods of the class and its whitelisted superclasses, most specific first.
+     * The reflection is only done once per class, and then shared with every runtime.
+     */
+    private static List<MethodDescriptor> getDescriptors(Class<?> clazz) {
+        return DESCRIPTORS.computeIfAbsent(clazz, someClass -> {
+            List<MethodDescriptor> list = new ArrayList<>();
+            Class<?> currentClass = someClass;
+            while (currentClass.isAnnotationPresent(LuaWhitelist.class)) {
+                for (Method method : currentClass.getDeclaredMethods()) {
+                    if (method.isAnnotationPresent(LuaWhitelist.class))
+                        list.add(getDescriptor(method));
+                }
+                currentClass = currentClass.getSuperclass();
+            }
+            return List.copyOf(list);
+        });
     }
 
-    public VarArgFunction getWrapper(Method method) {
-        return new VarArgFunction() {
+    //inherited methods share the same descriptor with their subclasses
+    private static MethodDescriptor getDescriptor(Method method) {
+        return METHODS.computeIfAbsent(method, MethodDescriptor::new);
+    }
 
-            private final boolean isStatic = Modifier.isStatic(method.getModifiers());
-            private Object caller;
+    public VarArgFunction getWrapper(Method method) {
+        return getWrapper(getDescriptor(method));
+    }
 
+    private VarArgFunction getWrapper(MethodDescriptor descriptor) {
+        return wrappers.computeIfAbsent(descriptor, this::createWrapper);
+    }
 
-            private final Class<?> clazz = method.getDeclaringClass();
-            private final Class<?>[] argumentTypes = method.getParameterTypes();
-            private final Object[] actualArgs = new Object[argumentTypes.length];
-            private final boolean[] requiredNotNil = getRequiredNotNil(method);
+    private VarArgFunction createWrapper(MethodDescriptor descriptor) {
+        return new VarArgFunction() {
 
+            //nothing is stored per call, so the same function can be safely called again from inside itself
             @Override
             public Varargs invoke(Varargs args) {
+                Object caller = descriptor.isStatic ? null : args.checkuserdata(1, descriptor.clazz);
+                int offset = descriptor.isStatic ? 1 : 2;
 
-                if (!isStatic)
-                    caller = args.checkuserdata(1, clazz);
-
-                //Fill in actualArgs from args
-                for (int i = 0; i < argumentTypes.length; i++) {
-                    int argIndex = i + (isStatic ? 1 : 2);
-                    boolean nil = args.isnil(argIndex);
-                    if (nil && requiredNotNil[i])
-                        throw new LuaError("bad argument: " + method.getName() + " " + argIndex + " do not allow nil values, expected " + FiguraDocsManager.getNameFor(argumentTypes[i]));
-                    if (argIndex <= args.narg() && !nil) {
-                        try {
-                            actualArgs[i] = switch (argumentTypes[i].getName()) {
-                                case "java.lang.Number", "java.lang.Double", "double" -> args.checkdouble(argIndex);
-                                case "java.lang.String" -> args.checkjstring(argIndex);
-                                case "java.lang.Boolean", "boolean" -> args.toboolean(argIndex);
-                                case "java.lang.Float", "float" -> (float) args.checkdouble(argIndex);
-                                case "java.lang.Integer", "int" -> args.checkint(argIndex);
-                                case "java.lang.Long", "long" -> args.checklong(argIndex);
-                                case "org.luaj.vm2.LuaTable" -> args.checktable(argIndex);
-                                case "org.luaj.vm2.LuaFunction" -> args.checkfunction(argIndex);
-                                case "org.luaj.vm2.LuaValue" -> args.arg(argIndex);
-                                case "java.lang.Object" -> luaToJava(args.arg(argIndex));
-                                default -> argumentTypes[i].getName().startsWith("[") ? luaVarargToJava(args, argIndex, argumentTypes[i]) : args.checkuserdata(argIndex, argumentTypes[i]);
-                            };
-                        } catch (LuaError err) {
-                            String expectedType = FiguraDocsManager.getNameFor(argumentTypes[i]);
-                            String actualType;
-                            if (args.arg(argIndex).type() == LuaValue.TUSERDATA)
-                                actualType = FiguraDocsManager.getNameFor(args.arg(argIndex).checkuserdata().getClass());
-                            else
-                                actualType = args.arg(argIndex).typename();
-                            throw new LuaError("Invalid argument " + argIndex + " to function " + method.getName() + ". Expected " + expectedType + ", but got " + actualType);
-                        }
-                    } else {
-                        actualArgs[i] = switch (argumentTypes[i].getName()) {
-                            case "double" -> 0D;
-                            case "int" -> 0;
-                            case "long" -> 0L;
-                            case "float" -> 0f;
-                            case "boolean" -> false;
-                            default -> null;
-                        };
-                    }
-                }
-
-                //Invoke the wrapped method
+                //Invoke the wrapped method, with fixed arity paths for the common cases
                 Object result;
                 try {
-                    result = method.invoke(caller, actualArgs);
-                } catch (IllegalAccessException | InvocationTargetException e) {
-                    throw e.getCause() instanceof LuaError l ? l : new LuaError(e.getCause());
+                    result = switch (descriptor.argumentTypes.length) {
+                        case 0 -> descriptor.handle.invokeExact(caller);
+                        case 1 -> descriptor.handle.invokeExact(caller, convertArg(descriptor, args, 0, offset));
+                        case 2 -> descriptor.handle.invokeExact(caller, convertArg(descriptor, args, 0, offset), convertArg(descriptor, args, 1, offset));
+                        case 3 -> descriptor.handle.invokeExact(caller, convertArg(descriptor, args, 0, offset), convertArg(descriptor, args, 1, offset), convertArg(descriptor, args, 2, offset));
+                        case 4 -> descriptor.handle.invokeExact(caller, convertArg(descriptor, args, 0, offset), convertArg(descriptor, args, 1, offset), convertArg(descriptor, args, 2, offset), convertArg(descriptor, args, 3, offset));
+                        default -> {
+                            Object[] actualArgs = new Object[descriptor.argumentTypes.length];
+                            for (int i = 0; i < actualArgs.length; i++)
+                                actualArgs[i] = convertArg(descriptor, args, i, offset);
+                            yield descriptor.handle.invokeExact(caller, actualArgs);
+                        }
+                    };
+                } catch (LuaError | Error e) {
+                    //errors such as stack overflows are left for the runtime to handle
+                    throw e;
+                } catch (Throwable e) {
+                    throw new LuaError(e);
                 }
 
                 //Convert the return value
@@ -196,11 +184,65 @@ public class LuaTypeManager {
 
             @Override
             public String tojstring() {
-                return "function: " + method.getName();
+                return "function: " + descriptor.name;
             }
         };
     }
 
+    private Object convertArg(MethodDescriptor descriptor, Varargs args, int i, int offset) {
+        int argIndex = i + offset;
+        boolean nil = args.isnil(argIndex);
+        if (nil && descriptor.requiredNotNil[i])
+            throw new LuaError("bad argument: " + descriptor.name + " " + argIndex + " do not allow nil values, expected " + FiguraDocsManager.getNameFor(descriptor.argumentTypes[i]));
+
+        if (argIndex > args.narg() || nil)
+            return descriptor.defaults[i];
+
+        try {
+            return descriptor.converters[i].convert(this, args, argIndex);
+        } catch (LuaError err) {
+            String expectedType = FiguraDocsManager.getNameFor(descriptor.argumentTypes[i]);
+            String actualType;
+            if (args.arg(argIndex).type() == LuaValue.TUSERDATA)
+                actualType = FiguraDocsManager.getNameFor(args.arg(argIndex).checkuserdata().getClass());
+            else
+                actualType = args.arg(argIndex).typename();
+            throw new LuaError("Invalid argument " + argIndex + " to function " + descriptor.name + ". Expected " + expectedType + ", but got " + actualType);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ArgConverter {
+        Object convert(LuaTypeManager manager, Varargs args, int index);
+    }
+
+    private static ArgConverter getConverter(Class<?> type) {
+        return switch (type.getName()) {
+            case "java.lang.Number", "java.lang.Double", "double" -> (m, args, i) -> args.checkdouble(i);
+            case "java.lang.String" -> (m, args, i) -> args.checkjstring(i);
+            case "java.lang.Boolean", "boolean" -> (m, args, i) -> args.toboolean(i);
+            case "java.lang.Float", "float" -> (m, args, i) -> (float) args.checkdouble(i);
+            case "java.lang.Integer", "int" -> (m, args, i) -> args.checkint(i);
+            case "java.lang.Long", "long" -> (m, args, i) -> args.checklong(i);
+            case "org.luaj.vm2.LuaTable" -> (m, args, i) -> args.checktable(i);
+            case "org.luaj.vm2.LuaFunction" -> (m, args, i) -> args.checkfunction(i);
+            case "org.luaj.vm2.LuaValue" -> (m, args, i) -> args.arg(i);
+            case "java.lang.Object" -> (m, args, i) -> m.luaToJava(args.arg(i));
+            default -> type.isArray() ? (m, args, i) -> m.luaVarargToJava(args, i, type) : (m, args, i) -> args.checkuserdata(i, type);
+        };
+    }
+
+    private static Object getDefault(Class<?> type) {
+        return switch (type.getName()) {
+            case "double" -> 0D;
+            case "int" -> 0;
+            case "long" -> 0L;
+            case "float" -> 0f;
+            case "boolean" -> false;
+            default -> null;
+        };
+    }
+
     private LuaValue wrap(Object instance) {
         Class<?> clazz = instance.getClass();
         LuaTable metatable = metatables.get(clazz);
@@ -327,4 +369,59 @@ public class LuaTypeManager {
         else
             return wrap(val);
     }
+
+    private static final class MethodDescriptor {
+
+        private final String name;
+        private final boolean isStatic;
+        private final Class<?> clazz;
+        private final Class<?>[] argumentTypes;
+        private final boolean[] requiredNotNil;
+        private final ArgConverter[] converters;
+        private final Object[] defaults;
+
+        //always (Object caller, Object... args)Object, with the args spread only above 4 of them
+        private final MethodHandle handle;
+
+        private MethodDescriptor(Method method) {
+            this.name = method.getName();
+            this.isStatic = Modifier.isStatic(method.getModifiers());
+            this.clazz = method.getDeclaringClass();
+            this.argumentTypes = method.getParameterTypes();
+
+            Parameter[] params = method.getParameters();
+            this.requiredNotNil = new boolean[params.length];
+            this.converters = new ArgConverter[params.length];
+            this.defaults = new Object[params.length];
+            for (int i = 0; i < params.length; i++) {
+                requiredNotNil[i] = params[i].isAnnotationPresent(LuaNotNil.class);
+                converters[i] = getConverter(argumentTypes[i]);
+                defaults[i] = getDefault(argumentTypes[i]);
+            }
+
+            try {
+                MethodHandle handle;
+                try {
+                    handle = MethodHandles.lookup().unreflect(method);
+                } catch (IllegalAccessException e) {
+                    //public methods from non-public classes
+                    method.setAccessible(true);
+                    handle = MethodHandles.lookup().unreflect(method);
+                }
+
+                //array arguments are already built by the converters
+                handle = handle.asFixedArity();
+                if (isStatic)
+                    handle = MethodHandles.dropArguments(handle, 0, Object.class);
+
+                int arity = argumentTypes.length;
+                handle = handle.asType(MethodType.genericMethodType(arity + 1));
+                if (arity > 4)
+                    handle = handle.asSpreader(Object[].class, arity);
+                this.handle = handle;
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("Whitelisted method " + clazz.getName() + "." + name + " is not accessible!", e);
+            }
+        }
+    }
 }
@@ -142,8 +142,10 @@ public class HostAPI {
     )
     public void sendChatMessage(@LuaNotNil String message) {
         if (!isHost() || !Config.CHAT_MESSAGES.asBool()) return;
-        LocalPlayer player = Minecraft.getInstance().player;
-        if (player != null) player.chatSigned(message, null);
+        FiguraMod.runOnClientThread(() -> {
+            LocalPlayer player = Minecraft.getInstance().player;
+            if (player != null) player.chatSigned(message, null);
+        });
     }
 
     @LuaWhitelist
@@ -156,8 +158,10 @@ public class HostAPI {
     )
     public void sendChatCommand(@LuaNotNil String command) {
         if (!isHost() || !Config.CHAT_MESSAGES.asBool()) return;
-        LocalPlayer player = Minecraft.getInstance().player;
-        if (player != null) player.commandSigned(command.startsWith("/") ? command.substring(1) : command, null);
+        FiguraMod.runOnClientThread(() -> {
+            LocalPlayer player = Minecraft.getInstance().player;
+            if (player != null) player.commandSigned(command.startsWith("/") ? command.substring(1) : command, null);
+        });
     }
 
     @LuaWhitelist
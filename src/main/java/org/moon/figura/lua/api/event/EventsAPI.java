@@ -27,6 +27,31 @@ public class EventsAPI {
         SKULL_RENDER = new LuaEvent();
         MOUSE_SCROLL = new LuaEvent();
         USE_ITEM = new LuaEvent();
+
+        for (Type type : Type.values())
+            eventsByType[type.ordinal()] = __index(type.name());
+    }
+
+    //events that are called from java
+    public enum Type {
+        ENTITY_INIT,
+        TICK,
+        WORLD_TICK,
+        RENDER,
+        POST_RENDER,
+        WORLD_RENDER,
+        POST_WORLD_RENDER,
+        CHAT_SEND_MESSAGE,
+        CHAT_RECEIVE_MESSAGE,
+        SKULL_RENDER,
+        MOUSE_SCROLL,
+        USE_ITEM
+    }
+
+    private final LuaEvent[] eventsByType = new LuaEvent[Type.values().length];
+
+    public LuaEvent get(Type type) {
+        return eventsByType[type.ordinal()];
     }
 
     //Unsure on how to do the docs for these fields. Maybe we keep the @LuaFieldDoc, just don't allow them to be
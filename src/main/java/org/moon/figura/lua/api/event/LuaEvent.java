@@ -114,6 +114,10 @@ public class LuaEvent {
         return removed;
     }
 
+    public boolean isEmpty() {
+        return functions.isEmpty() && queue.isEmpty();
+    }
+
     @LuaWhitelist
     @LuaMetamethodDoc(overloads = {
             @LuaMetamethodOverload(
@@ -3,6 +3,7 @@ package org.moon.figura.lua.api.particle;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.particle.Particle;
 import net.minecraft.client.particle.WakeParticle;
+import org.moon.figura.FiguraMod;
 import org.moon.figura.avatar.Avatar;
 import org.moon.figura.lua.LuaWhitelist;
 import org.moon.figura.lua.docs.LuaMethodDoc;
@@ -32,7 +33,7 @@ public class LuaParticle {
     @LuaMethodDoc("particle.spawn")
     public LuaParticle spawn() {
         if (!Minecraft.getInstance().isPaused() && owner.particlesRemaining.use())
-            ParticleAPI.getParticleEngine().figura$spawnParticle(particle, owner.owner);
+            FiguraMod.runOnClientThread(() -> ParticleAPI.getParticleEngine().figura$spawnParticle(particle, owner.owner));
         return this;
     }
 
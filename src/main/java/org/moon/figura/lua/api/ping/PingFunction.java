@@ -3,6 +3,7 @@ package org.moon.figura.lua.api.ping;
 import org.luaj.vm2.LuaFunction;
 import org.luaj.vm2.LuaValue;
 import org.luaj.vm2.Varargs;
+import org.moon.figura.FiguraMod;
 import org.moon.figura.avatar.Avatar;
 import org.moon.figura.backend2.NetworkStuff;
 import org.moon.figura.config.Config;
@@ -60,7 +61,7 @@ public class PingFunction extends LuaFunction {
         boolean sync = Config.SYNC_PINGS.asBool();
         byte[] data = new PingArg(args).toByteArray();
 
-        NetworkStuff.sendPing(id, sync, data);
+        FiguraMod.runOnClientThread(() -> NetworkStuff.sendPing(id, sync, data));
         if (!sync) owner.runPing(id, data);
 
         return NIL;
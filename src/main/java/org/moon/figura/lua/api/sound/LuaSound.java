@@ -7,6 +7,7 @@ import net.minecraft.client.resources.sounds.Sound;
 import net.minecraft.client.sounds.ChannelAccess;
 import net.minecraft.client.sounds.SoundBufferLibrary;
 import net.minecraft.sounds.SoundSource;
+import org.moon.figura.FiguraMod;
 import org.moon.figura.avatar.Avatar;
 import org.moon.figura.lua.LuaWhitelist;
 import org.moon.figura.lua.docs.LuaMethodDoc;
@@ -16,6 +17,8 @@ import org.moon.figura.math.vector.FiguraVec3;
 import org.moon.figura.trust.Trust;
 import org.moon.figura.utils.LuaUtils;
 
+import java.util.function.Consumer;
+
 @LuaWhitelist
 @LuaTypeDoc(
         name = "Sound",
@@ -28,8 +31,9 @@ public class LuaSound {
     private final SoundBuffer buffer;
     private final Sound sound;
 
-    private ChannelAccess.ChannelHandle handle;
-    private boolean playing = false;
+    //written on the client thread, but read by scripts from the parallel tick
+    private volatile ChannelAccess.ChannelHandle handle;
+    private volatile boolean playing = false;
 
     private FiguraVec3 pos = FiguraVec3.of();
     private float pitch = 1f;
@@ -55,6 +59,14 @@ public class LuaSound {
         return handle;
     }
 
+    //every change goes through the client thread, so they keep their order with play() from parallel ticks
+    private void execute(Consumer<Channel> action) {
+        FiguraMod.runOnClientThread(() -> {
+            if (handle != null)
+                handle.execute(action);
+        });
+    }
+
     private float calculateVolume() {
         return volume * SoundAPI.getSoundEngine().figura$getVolume(SoundSource.PLAYERS) * (owner.trust.get(Trust.VOLUME) / 100f);
     }
@@ -62,16 +74,32 @@ public class LuaSound {
     @LuaWhitelist
     @LuaMethodDoc("sound.play")
     public LuaSound play() {
-        if (this.playing)
+        if (isPlaying())
             return this;
 
+        //marked right away, so the state is right before the sound actually starts
+        this.playing = true;
+        FiguraMod.runOnClientThread(this::playNow);
+        return this;
+    }
+
+    private void playNow() {
+        if (!this.playing)
+            return;
+
+        //finished sounds can not be resumed, so they are played again
+        if (handle != null && handle.isStopped())
+            handle = null;
+
         if (handle != null) {
             handle.execute(Channel::unpause);
             this.playing = true;
         } else if (buffer != null) {
             this.handle = SoundAPI.getSoundEngine().figura$createHandle(owner.owner, id, Library.Pool.STATIC);
-            if (handle == null)
-                return this;
+            if (handle == null) {
+                this.playing = false;
+                return;
+            }
 
             SoundAPI.getSoundEngine().figura$addSound(this);
 
@@ -90,8 +118,10 @@ public class LuaSound {
         } else if (sound != null) {
             boolean shouldStream = sound.shouldStream();
             this.handle = SoundAPI.getSoundEngine().figura$createHandle(owner.owner, id, shouldStream ? Library.Pool.STREAMING : Library.Pool.STATIC);
-            if (handle == null)
-                return this;
+            if (handle == null) {
+                this.playing = false;
+                return;
+            }
 
             SoundAPI.getSoundEngine().figura$addSound(this);
 
@@ -119,24 +149,21 @@ public class LuaSound {
 
             this.playing = true;
         }
-
-        return this;
     }
 
     @LuaWhitelist
     @LuaMethodDoc("sound.is_playing")
     public boolean isPlaying() {
-        if (handle != null)
-            handle.execute(channel -> this.playing = channel.playing());
-        return this.playing;
+        //read right away from the handle, as the parallel tick can not wait for the client or sound threads
+        ChannelAccess.ChannelHandle handle = this.handle;
+        return this.playing && (handle == null || !handle.isStopped());
     }
 
     @LuaWhitelist
     @LuaMethodDoc("sound.pause") //TODO - no worky
     public LuaSound pause() {
         this.playing = false;
-        if (handle != null)
-            handle.execute(Channel::pause);
+        execute(Channel::pause);
         return this;
     }
 
@@ -144,9 +171,11 @@ public class LuaSound {
     @LuaMethodDoc("sound.stop")
     public LuaSound stop() {
         this.playing = false;
-        if (handle != null)
-            handle.execute(Channel::stop);
-        handle = null;
+        FiguraMod.runOnClientThread(() -> {
+            if (handle != null)
+                handle.execute(Channel::stop);
+            handle = null;
+        });
         return this;
     }
 
@@ -165,8 +194,7 @@ public class LuaSound {
             value = "sound.pos")
     public LuaSound pos(Object x, Double y, Double z) {
         this.pos = LuaUtils.parseVec3("pos", x, y, z);
-        if (handle != null)
-            handle.execute(channel -> channel.setSelfPosition(pos.asVec3()));
+        execute(channel -> channel.setSelfPosition(pos.asVec3()));
         return this;
     }
 
@@ -185,8 +213,7 @@ public class LuaSound {
             value = "sound.volume")
     public LuaSound volume(float volume) {
         this.volume = Math.min(volume, 1);
-        if (handle != null)
-            handle.execute(channel -> channel.setVolume(calculateVolume()));
+        execute(channel -> channel.setVolume(calculateVolume()));
         return this;
     }
 
@@ -205,8 +232,7 @@ public class LuaSound {
             value = "sound.attenuation")
     public LuaSound attenuation(float attenuation) {
         this.attenuation = Math.max(attenuation, 1);
-        if (handle != null)
-            handle.execute(channel -> channel.linearAttenuation(this.attenuation * 16f));
+        execute(channel -> channel.linearAttenuation(this.attenuation * 16f));
         return this;
     }
 
@@ -225,8 +251,7 @@ public class LuaSound {
             value = "sound.pitch")
     public LuaSound pitch(float pitch) {
         this.pitch = Math.max(pitch, 0);
-        if (handle != null)
-            handle.execute(channel -> channel.setPitch(this.pitch));
+        execute(channel -> channel.setPitch(this.pitch));
         return this;
     }
 
@@ -245,8 +270,7 @@ public class LuaSound {
             value = "sound.loop")
     public LuaSound loop(boolean loop) {
         this.loop = loop;
-        if (handle != null)
-            handle.execute(channel -> channel.setLooping(this.loop));
+        execute(channel -> channel.setLooping(this.loop));
         return this;
     }
 
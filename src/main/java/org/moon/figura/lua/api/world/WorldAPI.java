@@ -1,13 +1,8 @@
 package org.moon.figura.lua.api.world;
 
-import com.mojang.brigadier.StringReader;
 import com.mojang.datafixers.util.Pair;
 import net.minecraft.client.Minecraft;
-import net.minecraft.commands.CommandBuildContext;
-import net.minecraft.commands.arguments.blocks.BlockStateArgument;
-import net.minecraft.commands.arguments.item.ItemArgument;
 import net.minecraft.core.BlockPos;
-import net.minecraft.core.RegistryAccess;
 import net.minecraft.world.entity.EntityType;
 import net.minecraft.world.entity.Marker;
 import net.minecraft.world.entity.player.Player;
@@ -407,12 +402,8 @@ public class WorldAPI {
     )
     public static BlockStateAPI newBlock(@LuaNotNil String string, Object x, Double y, Double z) {
         BlockPos pos = LuaUtils.parseVec3("newBlock", x, y, z).asBlockPos();
-        try {
-            BlockState block = BlockStateArgument.block(new CommandBuildContext(RegistryAccess.BUILTIN.get())).parse(new StringReader(string)).getState();
-            return new BlockStateAPI(block, pos);
-        } catch (Exception e) {
-            throw new LuaError("Could not parse block state from string: " + string);
-        }
+        BlockState block = LuaUtils.blockFromString(string);
+        return new BlockStateAPI(block, pos);
     }
 
     @LuaWhitelist
@@ -434,16 +425,12 @@ public class WorldAPI {
             value = "world.new_item"
     )
     public static ItemStackAPI newItem(@LuaNotNil String string, Integer count, Integer damage) {
-        try {
-            ItemStack item = ItemArgument.item(new CommandBuildContext(RegistryAccess.BUILTIN.get())).parse(new StringReader(string)).createItemStack(1, false);
-            if (count != null)
-                item.setCount(count);
-            if (damage != null)
-                item.setDamageValue(damage);
-            return new ItemStackAPI(item);
-        } catch (Exception e) {
-            throw new LuaError("Could not parse item stack from string: " + string);
-        }
+        ItemStack item = LuaUtils.itemFromString(string);
+        if (count != null)
+            item.setCount(count);
+        if (damage != null)
+            item.setDamageValue(damage);
+        return new ItemStackAPI(item);
     }
 
     @LuaWhitelist
@@ -23,9 +23,11 @@ import java.nio.FloatBuffer;
 )
 public class FiguraMat3 extends FiguraMatrix<FiguraMat3, FiguraVec3> {
 
-    private static final FloatBuffer copyingBuffer = BufferUtils.createFloatBuffer(3 * 3);
+    //one per thread, as scripts can convert matrices from the parallel tick
+    private static final ThreadLocal<FloatBuffer> COPYING_BUFFER = ThreadLocal.withInitial(() -> BufferUtils.createFloatBuffer(3 * 3));
 
     public static FiguraMat3 fromMatrix3f(Matrix3f mat) {
+        FloatBuffer copyingBuffer = COPYING_BUFFER.get();
         copyingBuffer.clear();
         mat.store(copyingBuffer);
         return of(copyingBuffer.get(), copyingBuffer.get(), copyingBuffer.get(),
@@ -34,20 +36,19 @@ public class FiguraMat3 extends FiguraMatrix<FiguraMat3, FiguraVec3> {
     }
 
     public Matrix3f toMatrix3f() {
-        writeToBuffer();
         Matrix3f result = new Matrix3f();
-        result.load(copyingBuffer);
+        result.load(writeToBuffer());
         return result;
     }
 
     public void copyDataTo(Matrix3f vanillaMatrix) {
-        writeToBuffer();
-        vanillaMatrix.load(copyingBuffer);
+        vanillaMatrix.load(writeToBuffer());
     }
 
-    private void writeToBuffer() {
+    private FloatBuffer writeToBuffer() {
+        FloatBuffer copyingBuffer = COPYING_BUFFER.get();
         copyingBuffer.clear();
-        copyingBuffer
+        return copyingBuffer
                 .put((float) v11).put((float) v21).put((float) v31)
                 .put((float) v12).put((float) v22).put((float) v32)
                 .put((float) v13).put((float) v23).put((float) v33);
@@ -127,6 +128,12 @@ public class FiguraMat3 extends FiguraMatrix<FiguraMat3, FiguraVec3> {
             return equals(o);
         return false;
     }
+    public boolean isIdentity() {
+        return
+                v11 == 1 && v12 == 0 && v13 == 0 &&
+                v21 == 0 && v22 == 1 && v23 == 0 &&
+                v31 == 0 && v32 == 0 && v33 == 1;
+    }
     @Override
     public String toString() {
         return getString(v11, v12, v13, v21, v22, v23, v31, v32, v33);
@@ -24,9 +24,11 @@ import java.nio.FloatBuffer;
 )
 public class FiguraMat4 extends FiguraMatrix<FiguraMat4, FiguraVec4> {
 
-    private static final FloatBuffer copyingBuffer = BufferUtils.createFloatBuffer(4 * 4);
+    //one per thread, as scripts can convert matrices from the parallel tick
+    private static final ThreadLocal<FloatBuffer> COPYING_BUFFER = ThreadLocal.withInitial(() -> BufferUtils.createFloatBuffer(4 * 4));
 
     public static FiguraMat4 fromMatrix4f(Matrix4f mat) {
+        FloatBuffer copyingBuffer = COPYING_BUFFER.get();
         copyingBuffer.clear();
         mat.store(copyingBuffer);
         return of(copyingBuffer.get(), copyingBuffer.get(), copyingBuffer.get(), copyingBuffer.get(),
@@ -36,20 +38,19 @@ public class FiguraMat4 extends FiguraMatrix<FiguraMat4, FiguraVec4> {
     }
 
     public Matrix4f toMatrix4f() {
-        writeToBuffer();
         Matrix4f result = new Matrix4f();
-        result.load(copyingBuffer);
+        result.load(writeToBuffer());
         return result;
     }
 
     public void copyDataTo(Matrix4f vanillaMatrix) {
-        writeToBuffer();
-        vanillaMatrix.load(copyingBuffer);
+        vanillaMatrix.load(writeToBuffer());
     }
 
-    private void writeToBuffer() {
+    private FloatBuffer writeToBuffer() {
+        FloatBuffer copyingBuffer = COPYING_BUFFER.get();
         copyingBuffer.clear();
-        copyingBuffer
+        return copyingBuffer
                 .put((float) v11).put((float) v21).put((float) v31).put((float) v41)
                 .put((float) v12).put((float) v22).put((float) v32).put((float) v42)
                 .put((float) v13).put((float) v23).put((float) v33).put((float) v43)
@@ -87,7 +87,7 @@ public abstract class FiguraMatrix<T extends FiguraMatrix<T, V>, V extends Figur
         for (int i = 0; i < d.length; i++) {
             if (i % mod == 0)
                 sb.append("\n\t");
-            sb.append(FiguraLuaPrinter.df.format(d[i]));
+            sb.append(FiguraLuaPrinter.formatNumber(d[i]));
             if (i < d.length - 1)
                 sb.append(", ");
         }
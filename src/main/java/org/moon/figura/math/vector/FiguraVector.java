@@ -122,7 +122,7 @@ public abstract class FiguraVector<T extends FiguraVector<T, M>, M extends Figur
         sb.append("{");
 
         for (int i = 0; i < d.length; i++) {
-            sb.append(FiguraLuaPrinter.df.format(d[i]));
+            sb.append(FiguraLuaPrinter.formatNumber(d[i]));
             if (i < d.length - 1)
                 sb.append(", ");
         }
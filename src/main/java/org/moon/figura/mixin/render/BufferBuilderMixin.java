@@ -0,0 +1,48 @@
+package org.moon.figura.mixin.render;
+
+import com.mojang.blaze3d.vertex.BufferBuilder;
+import com.mojang.blaze3d.vertex.DefaultedVertexConsumer;
+import com.mojang.blaze3d.vertex.VertexFormat;
+import org.moon.figura.ducks.BufferBuilderAccessor;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+
+import java.nio.ByteBuffer;
+
+@Mixin(BufferBuilder.class)
+public abstract class BufferBuilderMixin extends DefaultedVertexConsumer implements BufferBuilderAccessor {
+
+    @Shadow private ByteBuffer buffer;
+    @Shadow private int nextElementByte;
+    @Shadow private int vertices;
+    @Shadow private int elementIndex;
+    @Shadow private VertexFormat format;
+    @Shadow private VertexFormat.Mode mode;
+    @Shadow private boolean building;
+
+    @Shadow protected abstract void ensureCapacity(int i);
+
+    @Override
+    public int reserveVertices(VertexFormat format, int count) {
+        if (!building || this.format != format || mode != VertexFormat.Mode.QUADS)
+            return -1;
+
+        //a default color would replace the colors written by the vertex calls, and a half written vertex would be split
+        if (defaultColorSet || elementIndex != 0)
+            return -1;
+
+        //same extra vertex of room that endVertex keeps
+        int size = format.getVertexSize();
+        ensureCapacity(size * (count + 1));
+
+        int offset = nextElementByte;
+        nextElementByte += size * count;
+        vertices += count;
+        return offset;
+    }
+
+    @Override
+    public ByteBuffer getByteBuffer() {
+        return buffer;
+    }
+}
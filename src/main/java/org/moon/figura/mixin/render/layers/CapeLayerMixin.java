@@ -31,7 +31,7 @@ public abstract class CapeLayerMixin extends RenderLayer<AbstractClientPlayer, P
 
     @Inject(method = "render(Lcom/mojang/blaze3d/vertex/PoseStack;Lnet/minecraft/client/renderer/MultiBufferSource;ILnet/minecraft/client/player/AbstractClientPlayer;FFFFFF)V", at = @At("HEAD"))
     public void preRender(PoseStack poseStack, MultiBufferSource multiBufferSource, int i, AbstractClientPlayer abstractClientPlayer, float f, float g, float h, float j, float k, float l, CallbackInfo ci) {
-        avatar = AvatarManager.getAvatar(abstractClientPlayer);
+        avatar = AvatarManager.getRenderedAvatar(abstractClientPlayer);
         if (avatar == null || avatar.luaRuntime == null)
             return;
 
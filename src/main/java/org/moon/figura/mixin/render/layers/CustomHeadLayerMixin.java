@@ -53,7 +53,7 @@ public abstract class CustomHeadLayerMixin<T extends LivingEntity, M extends Ent
         if (itemStack == null || (itemStack.getItem() instanceof ArmorItem armorItem && armorItem.getSlot() == EquipmentSlot.HEAD))
             return;
 
-        Avatar avatar = AvatarManager.getAvatar(livingEntity);
+        Avatar avatar = AvatarManager.getRenderedAvatar(livingEntity);
         if (avatar == null || avatar.trust.get(Trust.VANILLA_MODEL_EDIT) == 0)
             return;
 
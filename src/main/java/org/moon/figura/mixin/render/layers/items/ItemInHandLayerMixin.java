@@ -38,7 +38,7 @@ public abstract class ItemInHandLayerMixin<T extends LivingEntity, M extends Ent
         if (itemStack.isEmpty())
             return;
 
-        Avatar avatar = AvatarManager.getAvatar(livingEntity);
+        Avatar avatar = AvatarManager.getRenderedAvatar(livingEntity);
         if (avatar == null || avatar.trust.get(Trust.VANILLA_MODEL_EDIT) == 0)
             return;
 
@@ -46,7 +46,7 @@ public abstract class PlayerItemInHandLayerMixin <T extends Player, M extends En
         if (itemStack.isEmpty())
             return;
 
-        Avatar avatar = AvatarManager.getAvatar(livingEntity);
+        Avatar avatar = AvatarManager.getRenderedAvatar(livingEntity);
         if (avatar == null || avatar.trust.get(Trust.VANILLA_MODEL_EDIT) == 0)
             return;
 
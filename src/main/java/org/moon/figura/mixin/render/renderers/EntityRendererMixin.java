@@ -17,7 +17,11 @@ public abstract class EntityRendererMixin<T extends Entity> {
     @Inject(at = @At("HEAD"), method = "shouldRender", cancellable = true)
     private void shouldRender(T entity, Frustum frustum, double d, double e, double f, CallbackInfoReturnable<Boolean> cir) {
         Avatar avatar = AvatarManager.getAvatar(entity);
-        if (avatar != null && avatar.trust.get(Trust.OFFSCREEN_RENDERING) == 1)
+        if (avatar == null)
+            return;
+
+        avatar.updateLod(entity, frustum.isVisible(entity.getBoundingBoxForCulling()), d, e, f);
+        if (avatar.lod != Avatar.LOD.VANILLA && avatar.trust.get(Trust.OFFSCREEN_RENDERING) == 1)
             cir.setReturnValue(true);
     }
 }
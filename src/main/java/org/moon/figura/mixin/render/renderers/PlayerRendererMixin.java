@@ -52,7 +52,7 @@ public abstract class PlayerRendererMixin extends LivingEntityRenderer<AbstractC
             return;
 
         //get customizations
-        Avatar avatar = AvatarManager.getAvatarForPlayer(player.getUUID());
+        Avatar avatar = AvatarManager.getRenderedAvatar(player);
         EntityNameplateCustomization custom = avatar == null || avatar.luaRuntime == null ? null : avatar.luaRuntime.nameplate.ENTITY;
 
         //enabled
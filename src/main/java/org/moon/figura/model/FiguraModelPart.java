@@ -3,6 +3,7 @@ package org.moon.figura.model;
 import com.mojang.datafixers.util.Pair;
 import net.minecraft.client.renderer.LightTexture;
 import org.luaj.vm2.LuaError;
+import org.moon.figura.FiguraMod;
 import org.moon.figura.lua.LuaNotNil;
 import org.moon.figura.lua.LuaWhitelist;
 import org.moon.figura.lua.docs.LuaMethodDoc;
@@ -12,6 +13,7 @@ import org.moon.figura.math.matrix.FiguraMat3;
 import org.moon.figura.math.matrix.FiguraMat4;
 import org.moon.figura.math.vector.FiguraVec2;
 import org.moon.figura.math.vector.FiguraVec3;
+import org.moon.figura.model.rendering.BakedSubtree;
 import org.moon.figura.model.rendering.ImmediateAvatarRenderer;
 import org.moon.figura.model.rendering.texture.FiguraTexture;
 import org.moon.figura.model.rendering.texture.FiguraTextureSet;
@@ -43,6 +45,7 @@ public class FiguraModelPart implements Comparable<FiguraModelPart> {
 
     private final Map<String, FiguraModelPart> childCache = new HashMap<>();
     public final List<FiguraModelPart> children;
+    public Map<String, FiguraModelPart> pathIndex; //only for the root part
 
     public List<Integer> facesByTexture;
 
@@ -52,11 +55,28 @@ public class FiguraModelPart implements Comparable<FiguraModelPart> {
     public int textureWidth, textureHeight; //If the part has multiple textures, then these are -1.
 
     public boolean animated = false;
+    public boolean hasAnimations = false; //if any animation channel targets this part
     public int animationOverride = 0;
     public int lastAnimationPriority = Integer.MIN_VALUE;
 
     public final FiguraMat4 savedPartToWorldMat = FiguraMat4.of().scale(1 / 16d, 1 / 16d, 1 / 16d);
 
+    //matrices composed from the root down to this part, without the root itself,
+    //reused while neither the parent nor this part matrices changed
+    public final FiguraMat4 relativePositionMatrix = FiguraMat4.of();
+    public final FiguraMat3 relativeNormalMatrix = FiguraMat3.of();
+    public int relativeStamp = -1, relativeParentStamp = -1, relativeVersion = -1;
+
+    //the relative matrices with the root applied, reused while the root did not change either
+    public final FiguraMat4 composedPositionMatrix = FiguraMat4.of();
+    public final FiguraMat3 composedNormalMatrix = FiguraMat3.of();
+    public int composedStamp = -1, composedRootStamp = -1;
+
+    //static baking, where the bake is set on the subtree root and bakedInto on the baked descendants
+    public BakedSubtree bake;
+    public FiguraModelPart bakedInto;
+    public volatile boolean luaTouched = false;
+
     public FiguraModelPart(String name, PartCustomization customization, List<FiguraModelPart> children) {
         this.name = name;
         this.customization = customization;
@@ -79,6 +99,10 @@ public class FiguraModelPart implements Comparable<FiguraModelPart> {
         for (int i = 0; i < facesByTexture.size(); i++)
             avatarRenderer.advanceFaces(i, facesByTexture.get(i));
 
+        //baked children faces are already counted on this part
+        if (bake != null)
+            return;
+
         for (FiguraModelPart child : this.children)
             child.advanceVerticesImmediate(avatarRenderer);
     }
@@ -148,6 +172,10 @@ public class FiguraModelPart implements Comparable<FiguraModelPart> {
 
     public void clean() {
         customization.free();
+        relativePositionMatrix.free();
+        relativeNormalMatrix.free();
+        composedPositionMatrix.free();
+        composedNormalMatrix.free();
         for (FiguraModelPart child : children)
             child.clean();
     }
@@ -206,7 +234,7 @@ public class FiguraModelPart implements Comparable<FiguraModelPart> {
     @LuaWhitelist
     @LuaMethodDoc("model_part.get_parent")
     public FiguraModelPart getParent() {
-        return this.parent;
+        return expose(this.parent);
     }
 
     @LuaWhitelist
@@ -214,10 +242,32 @@ public class FiguraModelPart implements Comparable<FiguraModelPart> {
     public Map<Integer, FiguraModelPart> getChildren() {
         Map<Integer, FiguraModelPart> map = new HashMap<>();
         for (int i = 0; i < this.children.size(); i++)
-            map.put(i + 1, this.children.get(i));
+            map.put(i + 1, expose(this.children.get(i)));
         return map;
     }
 
+    @LuaWhitelist
+    @LuaMethodDoc(
+            overloads = @LuaMethodOverload(
+                    argumentTypes = String.class,
+                    argumentNames = "path"
+            ),
+            value = "model_part.get_part"
+    )
+    public FiguraModelPart getPart(@LuaNotNil String path) {
+        if (pathIndex != null)
+            return expose(pathIndex.get(path));
+
+        //only the found part is exposed, so the ones along the path can stay baked
+        FiguraModelPart part = this;
+        for (String name : path.split("\\.")) {
+            part = part.getChild(name);
+            if (part == null)
+                return null;
+        }
+        return expose(part);
+    }
+
     @LuaWhitelist
     @LuaMethodDoc(
             overloads = @LuaMethodOverload(
@@ -873,20 +923,36 @@ public class FiguraModelPart implements Comparable<FiguraModelPart> {
     @LuaWhitelist
     public Object __index(String key) {
         if (key == null) return null;
+        return expose(getChild(key));
+    }
 
-        if (this.childCache.containsKey(key))
-            return this.childCache.get(key);
+    private FiguraModelPart getChild(String name) {
+        if (this.childCache.containsKey(name))
+            return this.childCache.get(name);
 
         for (FiguraModelPart child : this.children)
-            if (child.name.equals(key)) {
-                this.childCache.put(key, child);
+            if (child.name.equals(name)) {
+                this.childCache.put(name, child);
                 return child;
             }
 
-        this.childCache.put(key, null);
+        this.childCache.put(name, null);
         return null;
     }
 
+    //scripts can now change this part, so it can no longer stay baked
+    //the check runs on the client thread, so it also sees a bake made while the part was being marked
+    private static FiguraModelPart expose(FiguraModelPart part) {
+        if (part != null && !part.luaTouched) {
+            part.luaTouched = true;
+            FiguraMod.runOnClientThread(() -> {
+                if (part.bakedInto != null && part.bakedInto.bake != null)
+                    part.bakedInto.bake.undo();
+            });
+        }
+        return part;
+    }
+
     @Override
     public int compareTo(FiguraModelPart o) {
         if (this.isChildOf(o))
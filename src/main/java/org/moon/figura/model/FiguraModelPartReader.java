@@ -19,6 +19,7 @@ import org.moon.figura.model.rendering.texture.FiguraTextureSet;
 import org.moon.figura.model.rendering.texture.RenderTypes;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -29,6 +30,25 @@ import java.util.Map;
 public class FiguraModelPartReader {
 
     public static FiguraModelPart read(Avatar owner, CompoundTag partCompound, List<FiguraImmediateBuffer.Builder> bufferBuilders, List<FiguraTextureSet> textureSets) {
+        FiguraModelPart root = readPart(owner, partCompound, bufferBuilders, textureSets);
+
+        //flatten the whole tree into dotted paths, for quick lookups from scripts
+        Map<String, FiguraModelPart> pathIndex = new HashMap<>();
+        for (FiguraModelPart child : root.children)
+            indexPaths(child, child.name, pathIndex);
+        root.pathIndex = pathIndex;
+
+        return root;
+    }
+
+    private static void indexPaths(FiguraModelPart part, String path, Map<String, FiguraModelPart> pathIndex) {
+        //same as chained indexing, the first child with the name wins
+        pathIndex.putIfAbsent(path, part);
+        for (FiguraModelPart child : part.children)
+            indexPaths(child, path + "." + child.name, pathIndex);
+    }
+
+    private static FiguraModelPart readPart(Avatar owner, CompoundTag partCompound, List<FiguraImmediateBuffer.Builder> bufferBuilders, List<FiguraTextureSet> textureSets) {
         //Read name
         String name = partCompound.getString("name");
 
@@ -77,7 +97,7 @@ public class FiguraModelPartReader {
         if (partCompound.contains("chld")) {
             ListTag listTag = partCompound.getList("chld", Tag.TAG_COMPOUND);
             for (Tag tag : listTag)
-                children.add(read(owner, (CompoundTag) tag, bufferBuilders, textureSets));
+                children.add(readPart(owner, (CompoundTag) tag, bufferBuilders, textureSets));
         }
 
         FiguraModelPart result = new FiguraModelPart(name, customization, children);
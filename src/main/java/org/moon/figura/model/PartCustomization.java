@@ -28,6 +28,17 @@ public class PartCustomization implements CachedType<PartCustomization> {
     public boolean needsMatrixRecalculation = true;
     public Boolean visible = null;
 
+    /**
+     * Incremented every time the position or normal matrices change,
+     * so renderers know when their cached transforms are outdated.
+     */
+    public int matrixVersion = 0;
+
+    //The inputs used to calculate the current matrices, used to skip recalculations that would not change anything
+    private final double[] cachedInputs = new double[30];
+    private PartType cachedPartType;
+    private boolean hasCachedInputs = false;
+
     private FiguraVec3 position = FiguraVec3.of();
     private FiguraVec3 rotation = FiguraVec3.of();
     private FiguraVec3 scale = FiguraVec3.of(1, 1, 1);
@@ -61,6 +72,12 @@ public class PartCustomization implements CachedType<PartCustomization> {
      */
     public void recalculate() {
         if (needsMatrixRecalculation) {
+            //values may have been set back to what they were, like vanilla transforms do every frame
+            if (!updateCachedInputs()) {
+                needsMatrixRecalculation = false;
+                return;
+            }
+
             positionMatrix.reset();
 
             //Position the pivot point at 0, 0, 0, and translate the part
@@ -123,9 +140,57 @@ public class PartCustomization implements CachedType<PartCustomization> {
             }
 
             needsMatrixRecalculation = false;
+            matrixVersion++;
         }
     }
 
+    /**
+     * Compares the current inputs with the ones used for the current matrices, and stores them.
+     * @return true if any of the inputs changed
+     */
+    private boolean updateCachedInputs() {
+        boolean changed = !hasCachedInputs || cachedPartType != partType;
+        changed |= cacheInput(0, position);
+        changed |= cacheInput(3, rotation);
+        changed |= cacheInput(6, scale);
+        changed |= cacheInput(9, pivot);
+        changed |= cacheInput(12, offsetPivot);
+        changed |= cacheInput(15, offsetPos);
+        changed |= cacheInput(18, offsetRot);
+        changed |= cacheInput(21, animPos);
+        changed |= cacheInput(24, animRot);
+        changed |= cacheInput(27, animScale);
+        cachedPartType = partType;
+        hasCachedInputs = true;
+        return changed;
+    }
+
+    private boolean cacheInput(int i, FiguraVec3 vec) {
+        boolean changed = cachedInputs[i] != vec.x || cachedInputs[i + 1] != vec.y || cachedInputs[i + 2] != vec.z;
+        cachedInputs[i] = vec.x;
+        cachedInputs[i + 1] = vec.y;
+        cachedInputs[i + 2] = vec.z;
+        return changed;
+    }
+
+    /**
+     * Marks the matrices as changed from outside of the recalculation.
+     */
+    private void matricesOverridden() {
+        hasCachedInputs = false;
+        matrixVersion++;
+    }
+
+    /**
+     * Resets the position and normal matrices to identity, until the next recalculation.
+     */
+    public void resetMatrices() {
+        positionMatrix.reset();
+        normalMatrix.reset();
+        matricesOverridden();
+        needsMatrixRecalculation = false;
+    }
+
     public void setPos(FiguraVec3 pos) {
         setPos(pos.x, pos.y, pos.z);
     }
@@ -233,14 +298,17 @@ public class PartCustomization implements CachedType<PartCustomization> {
         normalMatrix.set(temp);
         temp.free();
         needsMatrixRecalculation = false;
+        matricesOverridden();
     }
 
     public void setPositionMatrix(FiguraMat4 matrix) {
         positionMatrix.set(matrix);
+        matricesOverridden();
     }
 
     public void setNormalMatrix(FiguraMat3 matrix) {
         normalMatrix.set(matrix);
+        matricesOverridden();
     }
 
     public FiguraMat4 getPositionMatrix() {
@@ -293,6 +361,7 @@ public class PartCustomization implements CachedType<PartCustomization> {
         alpha = null;
         light = null;
         needsMatrixRecalculation = false;
+        hasCachedInputs = false;
         visible = null;
         primaryTexture = null;
         secondaryTexture = null;
@@ -323,9 +392,25 @@ public class PartCustomization implements CachedType<PartCustomization> {
             super(cache);
         }
 
+        private boolean skipMatrices;
+
         @Override
         protected void modify(PartCustomization valueToModify, PartCustomization modifierArg) {
-            valueToModify.modify(modifierArg);
+            valueToModify.modify(modifierArg, skipMatrices);
+        }
+
+        /**
+         * Pushes the customization, but using the given already composed position and normal matrices,
+         * instead of multiplying them with the ones on the top of the stack.
+         */
+        public void push(PartCustomization modifierArg, FiguraMat4 composedPosition, FiguraMat3 composedNormal) {
+            skipMatrices = true;
+            push(modifierArg);
+            skipMatrices = false;
+
+            PartCustomization top = peek();
+            top.positionMatrix.set(composedPosition);
+            top.normalMatrix.set(composedNormal);
         }
         @Override
         protected void copy(PartCustomization from, PartCustomization to) {
@@ -345,6 +430,7 @@ public class PartCustomization implements CachedType<PartCustomization> {
             to.light = from.light;
             to.overlay = from.overlay;
             to.needsMatrixRecalculation = from.needsMatrixRecalculation;
+            to.matricesOverridden();
             to.visible = from.visible;
             to.setPrimaryRenderType(from.primaryRenderType);
             to.setSecondaryRenderType(from.secondaryRenderType);
@@ -354,10 +440,12 @@ public class PartCustomization implements CachedType<PartCustomization> {
     }
 
     //Modify this object using the information contained in the other object
-    private void modify(PartCustomization other) {
-        positionMatrix.rightMultiply(other.positionMatrix);
+    private void modify(PartCustomization other, boolean skipMatrices) {
+        if (!skipMatrices) {
+            positionMatrix.rightMultiply(other.positionMatrix);
+            normalMatrix.rightMultiply(other.normalMatrix);
+        }
         uvMatrix.rightMultiply(other.uvMatrix);
-        normalMatrix.rightMultiply(other.normalMatrix);
 
         if (other.primaryRenderType != null)
             setPrimaryRenderType(other.primaryRenderType);
@@ -1,7 +1,6 @@
 package org.moon.figura.model.rendering;
 
 import com.mojang.blaze3d.vertex.PoseStack;
-import com.mojang.datafixers.util.Pair;
 import com.mojang.math.Matrix3f;
 import net.minecraft.client.Camera;
 import net.minecraft.client.Minecraft;
@@ -23,13 +22,14 @@ import org.moon.figura.model.rendering.texture.FiguraTexture;
 import org.moon.figura.model.rendering.texture.FiguraTextureSet;
 
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Map;
 
 /**
- * Mainly exists as an abstract superclass for VAO-based and
- * immediate mode avatar renderers. (VAO-based don't exist yet)
+ * Mainly exists as an abstract superclass for VBO-based and
+ * immediate mode avatar renderers.
  */
 public abstract class AvatarRenderer {
 
@@ -55,7 +55,7 @@ public abstract class AvatarRenderer {
     public boolean allowMatrixUpdate = false;
 
     public PartFilterScheme currentFilterScheme;
-    public final HashMap<ParentType, ConcurrentLinkedQueue<Pair<FiguraMat4, FiguraMat3>>> pivotCustomizations = new HashMap<>();
+    public final EnumMap<ParentType, PivotTransformBuffer> pivotTransforms = new EnumMap<>(ParentType.class);
     protected final List<FiguraTextureSet> textureSets = new ArrayList<>();
     public final HashMap<String, FiguraTexture> textures = new HashMap<>();
     public final HashMap<String, FiguraTexture> customTextures = new HashMap<>();
@@ -65,20 +65,18 @@ public abstract class AvatarRenderer {
     public boolean allowSkullRendering = true;
     public boolean allowPivotParts = true;
 
-    public AvatarRenderer(Avatar avatar) {
+    /**
+     * @param textures The already decoded src textures of the avatar
+     */
+    public AvatarRenderer(Avatar avatar, Map<String, FiguraTexture> textures) {
         this.avatar = avatar;
 
         //textures
 
         CompoundTag nbt = avatar.nbt.getCompound("textures");
-        CompoundTag src = nbt.getCompound("src");
 
         //src files
-        for (String key : src.getAllKeys()) {
-            byte[] data = src.getByteArray(key);
-            if (data.length != 0)
-                textures.put(key, new FiguraTexture(avatar, key, data));
-        }
+        this.textures.putAll(textures);
 
         //data files
         ListTag texturesList = nbt.getList("data", Tag.TAG_COMPOUND);
@@ -92,6 +90,11 @@ public abstract class AvatarRenderer {
 
     public abstract int render();
     public abstract int renderSpecialParts();
+
+    /**
+     * Merges the model parts which nothing can change anymore, called once the avatar script is initialized.
+     */
+    public void bakeStaticParts() {}
     protected void clean() {
         root.clean();
         for (FiguraTexture texture : customTextures.values())
@@ -0,0 +1,185 @@
+package org.moon.figura.model.rendering;
+
+import org.moon.figura.math.matrix.FiguraMat3;
+import org.moon.figura.math.matrix.FiguraMat4;
+import org.moon.figura.model.FiguraModelPart;
+import org.moon.figura.model.ParentType;
+import org.moon.figura.model.PartCustomization;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A subtree of parts which nothing but the model itself can change, so all the
+ * descendants vertices are pre-transformed into the subtree root space.
+ * The root then renders all of them with a single matrix, and the children are skipped.
+ * Undone as soon as a script gets hold of any of the baked parts, after which the
+ * subtrees below it that are still static are baked again on their own.
+ * Baking and undoing only happen on the client thread, which is the one rendering the parts.
+ */
+public class BakedSubtree {
+
+    private final ImmediateAvatarRenderer renderer;
+    private final FiguraModelPart root;
+    private final List<FiguraImmediateBuffer> buffers;
+    private final List<Integer> originalFaces;
+    private final int[] firstVertex;
+    private final FiguraImmediateBuffer.Backup[] backups;
+
+    private BakedSubtree(ImmediateAvatarRenderer renderer, FiguraModelPart root, int[] rootVertex) {
+        this.renderer = renderer;
+        this.root = root;
+        this.buffers = renderer.buffers;
+        this.originalFaces = root.facesByTexture;
+
+        int size = buffers.size();
+        int[] subtreeFaces = new int[size];
+        countFaces(root, subtreeFaces);
+
+        //save the original descendants vertices, to be able to undo the bake
+        this.firstVertex = new int[size];
+        this.backups = new FiguraImmediateBuffer.Backup[size];
+        List<Integer> merged = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int own = getFaces(root, i);
+            firstVertex[i] = rootVertex[i] + own * 4;
+            int count = (subtreeFaces[i] - own) * 4;
+            if (count > 0)
+                backups[i] = buffers.get(i).copyVertices(firstVertex[i], count);
+            merged.add(subtreeFaces[i]);
+        }
+
+        //transform the vertices
+        int[] cursor = firstVertex.clone();
+        FiguraMat4 posMat = FiguraMat4.of();
+        FiguraMat3 normalMat = FiguraMat3.of();
+        for (FiguraModelPart child : root.children)
+            bake(child, posMat, normalMat, cursor);
+        posMat.free();
+        normalMat.free();
+
+        root.facesByTexture = merged;
+        root.bake = this;
+    }
+
+    private void bake(FiguraModelPart part, FiguraMat4 parentPos, FiguraMat3 parentNormal, int[] cursor) {
+        PartCustomization custom = part.customization;
+        custom.recalculate();
+
+        FiguraMat4 posMat = parentPos.copy();
+        posMat.rightMultiply(custom.positionMatrix);
+        FiguraMat3 normalMat = parentNormal.copy();
+        normalMat.rightMultiply(custom.normalMatrix);
+
+        for (int i = 0; i < buffers.size(); i++) {
+            int count = getFaces(part, i) * 4;
+            if (count > 0)
+                buffers.get(i).transformVertices(cursor[i], count, posMat, normalMat);
+            cursor[i] += count;
+        }
+
+        part.bakedInto = root;
+        for (FiguraModelPart child : part.children)
+            bake(child, posMat, normalMat, cursor);
+
+        posMat.free();
+        normalMat.free();
+    }
+
+    /**
+     * Restores the original vertices, and bakes again what is still static. Must be called on the client thread.
+     */
+    public void undo() {
+        //undone already, or the avatar was unloaded meanwhile
+        if (root.bake != this || renderer.dirty)
+            return;
+
+        for (int i = 0; i < backups.length; i++) {
+            if (backups[i] != null)
+                buffers.get(i).restoreVertices(firstVertex[i], backups[i]);
+        }
+
+        root.facesByTexture = originalFaces;
+        root.bake = null;
+        for (FiguraModelPart child : root.children)
+            clearBaked(child);
+
+        renderer.bakeStaticParts();
+    }
+
+    private static void clearBaked(FiguraModelPart part) {
+        part.bakedInto = null;
+        for (FiguraModelPart child : part.children)
+            clearBaked(child);
+    }
+
+    // -- baking -- //
+
+    /**
+     * Bakes every static subtree below the root part, skipping the ones already baked.
+     * @param vertexOffsets The first vertex of the part, for each buffer
+     */
+    public static void bakeAll(ImmediateAvatarRenderer renderer, FiguraModelPart part, int[] vertexOffsets, boolean isRoot) {
+        int[] start = vertexOffsets.clone();
+        for (int i = 0; i < vertexOffsets.length; i++)
+            vertexOffsets[i] += getFaces(part, i) * 4;
+
+        //the merged faces already hold the whole subtree
+        if (part.bake != null)
+            return;
+
+        if (!isRoot && part.bakedInto == null && hasStaticFaces(part) && isStatic(part.children)) {
+            new BakedSubtree(renderer, part, start);
+            //skip the whole subtree
+            for (FiguraModelPart child : part.children)
+                skipFaces(child, vertexOffsets);
+            return;
+        }
+
+        for (FiguraModelPart child : part.children)
+            bakeAll(renderer, child, vertexOffsets, false);
+    }
+
+    //children which neither scripts, animations or vanilla parents can change
+    private static boolean isStatic(List<FiguraModelPart> parts) {
+        for (FiguraModelPart part : parts) {
+            PartCustomization custom = part.customization;
+            if (part.luaTouched || part.hasAnimations || part.parentType != ParentType.None || !part.renderTasks.isEmpty() ||
+                    Boolean.FALSE.equals(custom.visible) || custom.getPrimaryRenderType() != null || custom.getSecondaryRenderType() != null ||
+                    !isStatic(part.children))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean hasStaticFaces(FiguraModelPart part) {
+        for (FiguraModelPart child : part.children) {
+            for (int faces : child.facesByTexture) {
+                if (faces > 0)
+                    return true;
+            }
+            if (hasStaticFaces(child))
+                return true;
+        }
+        return false;
+    }
+
+    private static void countFaces(FiguraModelPart part, int[] faces) {
+        for (int i = 0; i < faces.length; i++)
+            faces[i] += getFaces(part, i);
+        for (FiguraModelPart child : part.children)
+            countFaces(child, faces);
+    }
+
+    private static void skipFaces(FiguraModelPart part, int[] vertexOffsets) {
+        for (int i = 0; i < vertexOffsets.length; i++)
+            vertexOffsets[i] += getFaces(part, i) * 4;
+        for (FiguraModelPart child : part.children)
+            skipFaces(child, vertexOffsets);
+    }
+
+    //parts read before a new texture set was found have less entries
+    private static int getFaces(FiguraModelPart part, int index) {
+        return index < part.facesByTexture.size() ? part.facesByTexture.get(index) : 0;
+    }
+}
@@ -1,38 +1,71 @@
 package org.moon.figura.model.rendering;
 
+import com.mojang.blaze3d.vertex.BufferBuilder;
+import com.mojang.blaze3d.vertex.DefaultVertexFormat;
 import com.mojang.blaze3d.vertex.VertexConsumer;
-import com.mojang.datafixers.util.Pair;
+import com.mojang.blaze3d.vertex.VertexFormat;
 import it.unimi.dsi.fastutil.floats.FloatArrayList;
 import net.minecraft.client.renderer.RenderType;
-import net.minecraft.resources.ResourceLocation;
+import net.minecraft.util.Mth;
 import org.lwjgl.BufferUtils;
+import org.moon.figura.ducks.BufferBuilderAccessor;
 import org.moon.figura.model.PartCustomization;
 import org.moon.figura.model.rendering.texture.FiguraTextureSet;
-import org.moon.figura.model.rendering.texture.RenderTypes;
+import org.moon.figura.math.matrix.FiguraMat3;
+import org.moon.figura.math.matrix.FiguraMat4;
 import org.moon.figura.math.vector.FiguraVec2;
 import org.moon.figura.math.vector.FiguraVec3;
-import org.moon.figura.math.vector.FiguraVec4;
 import org.moon.figura.utils.caching.CacheStack;
 
-import java.nio.FloatBuffer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 public class FiguraImmediateBuffer {
 
+    /**
+     * Vertices are stored interleaved in the vanilla entity format, in part space,
+     * so they can be copied straight into a BufferBuilder and transformed there.
+     */
+    public static final VertexFormat FORMAT = DefaultVertexFormat.NEW_ENTITY;
+    private static final int STRIDE = FORMAT.getVertexSize();
+    private static final int POS = 0, COLOR = 12, UV = 16, OVERLAY = 24, LIGHT = 28, NORMAL = 32;
+
     private final FiguraTextureSet textureSet;
     private final CacheStack<PartCustomization, PartCustomization> customizationStack;
-    public final FloatBuffer positions, uvs, normals;
+    private final ByteBuffer vertices;
+    private final int vertexCount;
 
-    private static final FiguraVec4 pos = FiguraVec4.of();
-    private static final FiguraVec3 normal = FiguraVec3.of();
-    private static final FiguraVec3 uv = FiguraVec3.of(0, 0, 1);
+    //the normals are also kept as floats, so they are transformed before being quantized to bytes
+    private final float[] normals;
+
+    //the vertex we are currently pointing at, and the marked one for the secondary pass
+    private int cursor, mark;
+
+    //changed whenever the stored vertices are rewritten, by baking or undoing it
+    private int version;
 
     private FiguraImmediateBuffer(FloatArrayList posList, FloatArrayList uvList, FloatArrayList normalList, FiguraTextureSet textureSet, PartCustomization.Stack customizationStack) {
-        positions = BufferUtils.createFloatBuffer(posList.size());
-        positions.put(posList.toArray(new float[0]));
-        uvs = BufferUtils.createFloatBuffer(uvList.size());
-        uvs.put(uvList.toArray(new float[0]));
-        normals = BufferUtils.createFloatBuffer(normalList.size());
-        normals.put(normalList.toArray(new float[0]));
+        this.vertexCount = posList.size() / 3;
+        this.vertices = BufferUtils.createByteBuffer(vertexCount * STRIDE);
+        this.normals = normalList.toFloatArray();
+
+        //store the uvs already normalized to 0-1, so rendering doesn't need to divide by the texture size
+        float width = textureSet.getWidth();
+        float height = textureSet.getHeight();
+
+        for (int i = 0; i < vertexCount; i++) {
+            int offset = i * STRIDE;
+            vertices.putFloat(offset + POS, posList.getFloat(i * 3));
+            vertices.putFloat(offset + POS + 4, posList.getFloat(i * 3 + 1));
+            vertices.putFloat(offset + POS + 8, posList.getFloat(i * 3 + 2));
+            vertices.putInt(offset + COLOR, 0xFFFFFFFF);
+            vertices.putFloat(offset + UV, uvList.getFloat(i * 2) / width);
+            vertices.putFloat(offset + UV + 4, uvList.getFloat(i * 2 + 1) / height);
+            vertices.putInt(offset + OVERLAY, 0);
+            vertices.putInt(offset + LIGHT, 0);
+            putNormal(vertices, offset + NORMAL, normalList.getFloat(i * 3), normalList.getFloat(i * 3 + 1), normalList.getFloat(i * 3 + 2));
+        }
+
         this.textureSet = textureSet;
         this.customizationStack = customizationStack;
     }
@@ -46,21 +79,15 @@ public class FiguraImmediateBuffer {
     }
 
     public void markBuffers() {
-        positions.mark();
-        uvs.mark();
-        normals.mark();
+        mark = cursor;
     }
 
     public void resetBuffers() {
-        positions.reset();
-        uvs.reset();
-        normals.reset();
+        cursor = mark;
     }
 
     public void clearBuffers() {
-        positions.clear();
-        uvs.clear();
-        normals.clear();
+        cursor = mark = 0;
     }
 
     /**
@@ -68,12 +95,77 @@ public class FiguraImmediateBuffer {
      * @param faceCount The number of faces to skip
      */
     public void advanceBuffers(int faceCount) {
-        positions.position(positions.position() + faceCount * 12);
-        uvs.position(uvs.position() + faceCount * 8);
-        normals.position(normals.position() + faceCount * 12);
+        cursor += faceCount * 4;
+    }
+
+    /**
+     * @return The index of the vertex the buffers are currently pointing at
+     */
+    public int getVertexOffset() {
+        return cursor;
     }
 
-    public void pushVertices(AvatarRenderer renderer, int faceCount, int[] remainingComplexity) {
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * @return A number which changes whenever the stored vertices are rewritten
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Permanently transforms the given vertices, used when baking static parts together.
+     * @param first The index of the first vertex
+     * @param count The number of vertices
+     */
+    public void transformVertices(int first, int count, FiguraMat4 posMat, FiguraMat3 normalMat) {
+        version++;
+        for (int i = first; i < first + count; i++) {
+            int offset = i * STRIDE;
+
+            float x = vertices.getFloat(offset + POS), y = vertices.getFloat(offset + POS + 4), z = vertices.getFloat(offset + POS + 8);
+            vertices.putFloat(offset + POS, (float) (posMat.v11 * x + posMat.v12 * y + posMat.v13 * z + posMat.v14));
+            vertices.putFloat(offset + POS + 4, (float) (posMat.v21 * x + posMat.v22 * y + posMat.v23 * z + posMat.v24));
+            vertices.putFloat(offset + POS + 8, (float) (posMat.v31 * x + posMat.v32 * y + posMat.v33 * z + posMat.v34));
+
+            int n = i * 3;
+            float nx = normals[n], ny = normals[n + 1], nz = normals[n + 2];
+            float tx = (float) (normalMat.v11 * nx + normalMat.v12 * ny + normalMat.v13 * nz);
+            float ty = (float) (normalMat.v21 * nx + normalMat.v22 * ny + normalMat.v23 * nz);
+            float tz = (float) (normalMat.v31 * nx + normalMat.v32 * ny + normalMat.v33 * nz);
+
+            //scaled parts would otherwise get clamped normals
+            float length = Mth.sqrt(tx * tx + ty * ty + tz * tz);
+            if (length > 0f) {
+                normals[n] = tx / length;
+                normals[n + 1] = ty / length;
+                normals[n + 2] = tz / length;
+                putNormal(vertices, offset + NORMAL, normals[n], normals[n + 1], normals[n + 2]);
+            }
+        }
+    }
+
+    public Backup copyVertices(int first, int count) {
+        ByteBuffer copy = BufferUtils.createByteBuffer(count * STRIDE);
+        copy.put(0, vertices, first * STRIDE, count * STRIDE);
+        return new Backup(copy, Arrays.copyOfRange(normals, first * 3, (first + count) * 3));
+    }
+
+    public void restoreVertices(int first, Backup backup) {
+        version++;
+        vertices.put(first * STRIDE, backup.vertices, 0, backup.vertices.capacity());
+        System.arraycopy(backup.normals, 0, normals, first * 3, backup.normals.length);
+    }
+
+    /**
+     * The original vertices of a baked range, to be able to undo the bake.
+     */
+    public record Backup(ByteBuffer vertices, float[] normals) {}
+
+    public void pushVertices(ImmediateAvatarRenderer renderer, int faceCount, int[] remainingComplexity) {
         //Handle cases that we can quickly
         if (faceCount == 0)
             return;
@@ -86,8 +178,8 @@ public class FiguraImmediateBuffer {
             return;
         }
 
-        RenderType primary = this.getTexture(renderer, customization.getPrimaryRenderType(), customization.primaryTexture, textureSet);
-        RenderType secondary = this.getTexture(renderer, customization.getSecondaryRenderType(), customization.secondaryTexture, textureSet);
+        RenderType primary = textureSet.getRenderType(renderer.avatar.owner, customization.primaryTexture, customization.getPrimaryRenderType(), renderer.translucent, renderer.glowing);
+        RenderType secondary = textureSet.getRenderType(renderer.avatar.owner, customization.secondaryTexture, customization.getSecondaryRenderType(), renderer.translucent, renderer.glowing);
 
         if (primary == null && secondary == null) {
             advanceBuffers(faceCount);
@@ -98,72 +190,161 @@ public class FiguraImmediateBuffer {
         if (primary != null) {
             if (secondary != null)
                 markBuffers();
-            pushToConsumer(renderer.bufferSource.getBuffer(primary), faceCount);
+            renderer.emitFaces(this, primary, faceCount);
         }
         if (secondary != null) {
             if (primary != null)
                 resetBuffers();
-            pushToConsumer(renderer.bufferSource.getBuffer(secondary), faceCount);
+            renderer.emitFaces(this, secondary, faceCount);
         }
     }
 
-    private RenderType getTexture(AvatarRenderer renderer, RenderTypes types, Pair<FiguraTextureSet.OverrideType, Object> texture, FiguraTextureSet textureSet) {
-        if (types == RenderTypes.NONE)
-            return null;
-
-        //get texture
-        ResourceLocation id = textureSet.getOverrideTexture(renderer.avatar.owner, texture);
+    public void pushToConsumer(VertexConsumer consumer, int faceCount) {
+        PartCustomization customization = customizationStack.peek();
+        int count = Math.min(faceCount * 4, vertexCount - cursor);
+
+        //unpack the matrices once per part, so the vertex loop only does float math
+        FiguraMat4 posMat = customization.positionMatrix;
+        float p11 = (float) posMat.v11, p12 = (float) posMat.v12, p13 = (float) posMat.v13, p14 = (float) posMat.v14;
+        float p21 = (float) posMat.v21, p22 = (float) posMat.v22, p23 = (float) posMat.v23, p24 = (float) posMat.v24;
+        float p31 = (float) posMat.v31, p32 = (float) posMat.v32, p33 = (float) posMat.v33, p34 = (float) posMat.v34;
+
+        //the normal matrix always holds the root and camera rotations, so there is no identity shortcut for it
+        FiguraMat3 normalMat = customization.normalMatrix;
+        float n11 = (float) normalMat.v11, n12 = (float) normalMat.v12, n13 = (float) normalMat.v13;
+        float n21 = (float) normalMat.v21, n22 = (float) normalMat.v22, n23 = (float) normalMat.v23;
+        float n31 = (float) normalMat.v31, n32 = (float) normalMat.v32, n33 = (float) normalMat.v33;
+
+        FiguraMat3 uvMat = customization.uvMatrix;
+        boolean uvIdentity = uvMat.isIdentity();
+        float u11 = (float) uvMat.v11, u12 = (float) uvMat.v12, u13 = (float) uvMat.v13;
+        float u21 = (float) uvMat.v21, u22 = (float) uvMat.v22, u23 = (float) uvMat.v23;
+
+        float r = (float) customization.color.x;
+        float g = (float) customization.color.y;
+        float b = (float) customization.color.z;
+        float a = customization.alpha;
+        int overlay = customization.overlay;
+        int light = customization.light;
+
+        //fast path, transform straight into the builder memory
+        ByteBuffer dst = null;
+        int dstOffset = -1;
+        if (consumer instanceof BufferBuilder builder && (dstOffset = ((BufferBuilderAccessor) builder).reserveVertices(FORMAT, count)) >= 0)
+            dst = ((BufferBuilderAccessor) builder).getByteBuffer();
+
+        //the color is the same for the whole part, and white ones are already stored in the vertices
+        boolean colorIdentity = r == 1f && g == 1f && b == 1f && a == 1f;
+        int cr = packColor(r), cg = packColor(g), cb = packColor(b), ca = packColor(a);
+
+        if (dst != null) {
+            //bulk copy, and then transform in place
+            dst.put(dstOffset, vertices, cursor * STRIDE, count * STRIDE);
+        }
 
-        //get render type
-        if (id != null) {
-            if (renderer.translucent)
-                return RenderType.itemEntityTranslucentCull(id);
-            if (renderer.glowing)
-                return RenderType.outline(id);
+        for (int i = 0; i < count; i++) {
+            int src = (cursor + i) * STRIDE;
+
+            float x = vertices.getFloat(src + POS), y = vertices.getFloat(src + POS + 4), z = vertices.getFloat(src + POS + 8);
+            float tx = p11 * x + p12 * y + p13 * z + p14;
+            float ty = p21 * x + p22 * y + p23 * z + p24;
+            float tz = p31 * x + p32 * y + p33 * z + p34;
+
+            int n = (cursor + i) * 3;
+            float lx = normals[n], ly = normals[n + 1], lz = normals[n + 2];
+            float nx = n11 * lx + n12 * ly + n13 * lz;
+            float ny = n21 * lx + n22 * ly + n23 * lz;
+            float nz = n31 * lx + n32 * ly + n33 * lz;
+
+            float u = vertices.getFloat(src + UV), v = vertices.getFloat(src + UV + 4);
+            if (!uvIdentity) {
+                float mu = u11 * u + u12 * v + u13;
+                v = u21 * u + u22 * v + u23;
+                u = mu;
+            }
+
+            if (dst == null) {
+                consumer.vertex(
+                        tx, ty, tz,
+                        r, g, b, a,
+                        u, v,
+                        overlay,
+                        light,
+                        nx, ny, nz
+                );
+                continue;
+            }
+
+            int out = dstOffset + i * STRIDE;
+            dst.putFloat(out + POS, tx);
+            dst.putFloat(out + POS + 4, ty);
+            dst.putFloat(out + POS + 8, tz);
+            if (!colorIdentity) {
+                dst.put(out + COLOR, (byte) cr);
+                dst.put(out + COLOR + 1, (byte) cg);
+                dst.put(out + COLOR + 2, (byte) cb);
+                dst.put(out + COLOR + 3, (byte) ca);
+            }
+            if (!uvIdentity) {
+                dst.putFloat(out + UV, u);
+                dst.putFloat(out + UV + 4, v);
+            }
+            putPacked(dst, out + OVERLAY, overlay);
+            putPacked(dst, out + LIGHT, light);
+            putNormal(dst, out + NORMAL, nx, ny, nz);
         }
 
-        return types == null ? null : types.get(id);
+        cursor += count;
     }
 
-    private void pushToConsumer(VertexConsumer consumer, int faceCount) {
-        PartCustomization customization = customizationStack.peek();
-
-        FiguraVec3 uvFixer = FiguraVec3.of();
-        uvFixer.set(textureSet.getWidth(), textureSet.getHeight(), 1); //Dividing by this makes uv 0 to 1
-
-        for (int i = 0; i < faceCount*4; i++) {
-
-            pos.set(positions.get(), positions.get(), positions.get(), 1);
-            pos.transform(customization.positionMatrix);
-            normal.set(normals.get(), normals.get(), normals.get());
-            normal.transform(customization.normalMatrix);
-            uv.set(uvs.get(), uvs.get(), 1);
-            uv.divide(uvFixer);
-            uv.transform(customization.uvMatrix);
-
-            consumer.vertex(
-                    (float) pos.x,
-                    (float) pos.y,
-                    (float) pos.z,
-
-                    (float) customization.color.x,
-                    (float) customization.color.y,
-                    (float) customization.color.z,
-                    customization.alpha,
+    /**
+     * Pushes the vertices in part space, without applying the position and normal matrices.
+     * Color is left as white, since it is applied later, together with the matrices, light and overlay.
+     */
+    public void pushLocalToConsumer(BufferBuilder builder, int faceCount, PartCustomization customization) {
+        int count = Math.min(faceCount * 4, vertexCount - cursor);
+        BufferBuilderAccessor accessor = (BufferBuilderAccessor) builder;
+        int dstOffset = accessor.reserveVertices(FORMAT, count);
+        if (dstOffset < 0)
+            throw new IllegalStateException("Builder is not building " + FORMAT + " quads!");
+
+        ByteBuffer dst = accessor.getByteBuffer();
+        dst.put(dstOffset, vertices, cursor * STRIDE, count * STRIDE);
+
+        FiguraMat3 uvMat = customization.uvMatrix;
+        boolean uvIdentity = uvMat.isIdentity();
+        float u11 = (float) uvMat.v11, u12 = (float) uvMat.v12, u13 = (float) uvMat.v13;
+        float u21 = (float) uvMat.v21, u22 = (float) uvMat.v22, u23 = (float) uvMat.v23;
+
+        //light and overlay are left out, as the retained renderer sets them for each draw
+        if (!uvIdentity) {
+            for (int i = 0; i < count; i++) {
+                int out = dstOffset + i * STRIDE;
+                float u = dst.getFloat(out + UV), v = dst.getFloat(out + UV + 4);
+                dst.putFloat(out + UV, u11 * u + u12 * v + u13);
+                dst.putFloat(out + UV + 4, u21 * u + u22 * v + u23);
+            }
+        }
 
-                    (float) uv.x,
-                    (float) uv.y,
+        cursor += count;
+    }
 
-                    customization.overlay,
-                    customization.light,
+    private static int packColor(float value) {
+        return (int) (value * 255f) & 0xFF;
+    }
 
-                    (float) normal.x,
-                    (float) normal.y,
-                    (float) normal.z
-            );
-        }
+    //same packing as the vanilla overlay and light coords
+    private static void putPacked(ByteBuffer buffer, int offset, int packed) {
+        buffer.putShort(offset, (short) (packed & 0xFFFF));
+        buffer.putShort(offset + 2, (short) (packed >> 16 & 0xFFFF));
+    }
 
-        uvFixer.free();
+    //same packing as the vanilla normals
+    private static void putNormal(ByteBuffer buffer, int offset, float x, float y, float z) {
+        buffer.put(offset, (byte) ((int) (Mth.clamp(x, -1f, 1f) * 127f) & 0xFF));
+        buffer.put(offset + 1, (byte) ((int) (Mth.clamp(y, -1f, 1f) * 127f) & 0xFF));
+        buffer.put(offset + 2, (byte) ((int) (Mth.clamp(z, -1f, 1f) * 127f) & 0xFF));
+        buffer.put(offset + 3, (byte) 0);
     }
 
     public static Builder builder() {
@@ -1,10 +1,17 @@
 package org.moon.figura.model.rendering;
 
+import com.mojang.blaze3d.vertex.BufferBuilder;
+import com.mojang.blaze3d.vertex.DefaultVertexFormat;
 import com.mojang.blaze3d.vertex.PoseStack;
+import com.mojang.blaze3d.vertex.VertexConsumer;
+import com.mojang.blaze3d.vertex.VertexFormat;
 import com.mojang.datafixers.util.Pair;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.renderer.LevelRenderer;
+import net.minecraft.client.renderer.LightTexture;
 import net.minecraft.client.renderer.RenderType;
+import net.minecraft.client.renderer.texture.OverlayTexture;
+import org.moon.figura.FiguraMod;
 import org.moon.figura.avatar.Avatar;
 import org.moon.figura.model.FiguraModelPart;
 import org.moon.figura.model.FiguraModelPartReader;
@@ -22,7 +29,7 @@ import org.moon.figura.utils.ColorUtils;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Map;
 
 public class ImmediateAvatarRenderer extends AvatarRenderer {
 
@@ -32,8 +39,14 @@ public class ImmediateAvatarRenderer extends AvatarRenderer {
     public static final FiguraMat4 VIEW_TO_WORLD_MATRIX = FiguraMat4.of();
     private static final PartCustomization pivotOffsetter = PartCustomization.of();
 
-    public ImmediateAvatarRenderer(Avatar avatar) {
-        super(avatar);
+    //root matrices of the current render, and the stamp identifying them
+    private final FiguraMat4 rootPositionMatrix = FiguraMat4.of();
+    private final FiguraMat3 rootNormalMatrix = FiguraMat3.of();
+    private int rootStamp;
+    private int stampCounter;
+
+    public ImmediateAvatarRenderer(Avatar avatar, Map<String, FiguraTexture> textures) {
+        super(avatar, textures);
 
         //Vertex data, read model parts
         List<FiguraImmediateBuffer.Builder> builders = new ArrayList<>();
@@ -47,10 +60,21 @@ public class ImmediateAvatarRenderer extends AvatarRenderer {
     protected void clean() {
         super.clean();
         customizationStack.fullClear();
+        rootPositionMatrix.free();
+        rootNormalMatrix.free();
         for (FiguraImmediateBuffer buffer : buffers)
             buffer.clean();
     }
 
+    @Override
+    public void bakeStaticParts() {
+        //the ticks may run off the client thread, which is the one rendering the baked parts
+        FiguraMod.runOnClientThread(() -> {
+            if (!dirty)
+                BakedSubtree.bakeAll(this, root, new int[buffers.size()], true);
+        });
+    }
+
     public void checkEmpty() {
         if (!customizationStack.isEmpty())
             throw new IllegalStateException("Customization stack not empty!");
@@ -76,6 +100,13 @@ public class ImmediateAvatarRenderer extends AvatarRenderer {
         //Push transform
         customizationStack.push(customization);
 
+        //parts are cached relative to the root, so a new root only needs to be applied to them again
+        if (rootStamp == 0 || !customization.positionMatrix.equals(rootPositionMatrix) || !customization.normalMatrix.equals(rootNormalMatrix)) {
+            rootPositionMatrix.set(customization.positionMatrix);
+            rootNormalMatrix.set(customization.normalMatrix);
+            rootStamp = ++stampCounter;
+        }
+
         //Iterate and setup each buffer
         for (FiguraImmediateBuffer buffer : buffers) {
             //Reset buffers
@@ -104,11 +135,13 @@ public class ImmediateAvatarRenderer extends AvatarRenderer {
         int[] remainingComplexity = new int[] {prev};
         Boolean initialValue = currentFilterScheme.initialValue(root);
         if (initialValue != null)
-            renderPart(root, remainingComplexity, initialValue);
+            renderPart(root, remainingComplexity, initialValue, null);
 
         customizationStack.pop();
         checkEmpty();
 
+        flushFaces();
+
         this.isRendering = false;
         if (this.dirty)
             clean();
@@ -148,7 +181,7 @@ public class ImmediateAvatarRenderer extends AvatarRenderer {
         return customization;
     }
 
-    protected boolean renderPart(FiguraModelPart part, int[] remainingComplexity, boolean prevPredicate) {
+    protected boolean renderPart(FiguraModelPart part, int[] remainingComplexity, boolean prevPredicate, FiguraModelPart parent) {
         PartCustomization custom = part.customization;
 
         //Store old visibility, but overwrite it in case we only want to render certain parts
@@ -168,15 +201,37 @@ public class ImmediateAvatarRenderer extends AvatarRenderer {
         //push customization stack
         //that's right, check only for previous predicate
         boolean reset = !allowHiddenTransforms && !prevPredicate;
-        if (reset) {
-            custom.positionMatrix.reset();
-            custom.normalMatrix.reset();
-            custom.needsMatrixRecalculation = false;
-        }
+        if (reset)
+            custom.resetMatrices();
 
         custom.visible = part.getVisible() && thisPassedPredicate;
         custom.recalculate();
-        customizationStack.push(custom);
+
+        //compose relative to the root, so moving the camera or the entity does not invalidate the whole tree
+        int parentStamp = parent == null ? 0 : parent.relativeStamp;
+        if (part.relativeParentStamp != parentStamp || part.relativeVersion != custom.matrixVersion) {
+            part.relativePositionMatrix.set(custom.positionMatrix);
+            part.relativeNormalMatrix.set(custom.normalMatrix);
+            if (parent != null) {
+                part.relativePositionMatrix.multiply(parent.relativePositionMatrix);
+                part.relativeNormalMatrix.multiply(parent.relativeNormalMatrix);
+            }
+            part.relativeParentStamp = parentStamp;
+            part.relativeVersion = custom.matrixVersion;
+            part.relativeStamp = ++stampCounter;
+        }
+
+        //then the root is applied once, or not at all when neither changed
+        if (part.composedStamp != part.relativeStamp || part.composedRootStamp != rootStamp) {
+            part.composedPositionMatrix.set(part.relativePositionMatrix);
+            part.composedPositionMatrix.multiply(rootPositionMatrix);
+            part.composedNormalMatrix.set(part.relativeNormalMatrix);
+            part.composedNormalMatrix.multiply(rootNormalMatrix);
+            part.composedStamp = part.relativeStamp;
+            part.composedRootStamp = rootStamp;
+        }
+
+        customizationStack.push(custom, part.composedPositionMatrix, part.composedNormalMatrix);
         custom.visible = storedVisibility;
 
         if (reset) custom.needsMatrixRecalculation = true;
@@ -235,12 +290,14 @@ public class ImmediateAvatarRenderer extends AvatarRenderer {
             customizationStack.pop();
         }
 
-        //render children
-        for (FiguraModelPart child : part.children)
-            if (!renderPart(child, remainingComplexity, thisPassedPredicate)) {
-                customizationStack.pop();
-                return false;
-            }
+        //render children, unless they are baked into this part
+        if (part.bake == null) {
+            for (FiguraModelPart child : part.children)
+                if (!renderPart(child, remainingComplexity, thisPassedPredicate, part)) {
+                    customizationStack.pop();
+                    return false;
+                }
+        }
 
         //reset the parent
         part.resetVanillaTransforms();
@@ -266,10 +323,8 @@ public class ImmediateAvatarRenderer extends AvatarRenderer {
     }
 
     protected void savePivotTransform(ParentType parentType) {
-        FiguraMat4 currentPosMat = customizationStack.peek().getPositionMatrix();
-        FiguraMat3 currentNormalMat = customizationStack.peek().getNormalMatrix();
-        ConcurrentLinkedQueue<Pair<FiguraMat4, FiguraMat3>> queue = pivotCustomizations.computeIfAbsent(parentType, p -> new ConcurrentLinkedQueue<>());
-        queue.add(new Pair<>(currentPosMat, currentNormalMat)); //These are COPIES, so ok to add
+        PartCustomization customization = customizationStack.peek();
+        pivotTransforms.computeIfAbsent(parentType, p -> new PivotTransformBuffer()).add(customization.positionMatrix, customization.normalMatrix);
     }
 
     protected FiguraMat4 partToWorldMatrices(PartCustomization cust) {
@@ -291,6 +346,52 @@ public class ImmediateAvatarRenderer extends AvatarRenderer {
         buffers.get(texIndex).pushVertices(this, faceCount, remainingComplexity);
     }
 
+    /**
+     * Sends the faces at the current position of the buffer to the render type consumer.
+     * Must always advance the buffer by the given amount of faces.
+     */
+    public void emitFaces(FiguraImmediateBuffer buffer, RenderType renderType, int faceCount) {
+        buffer.pushToConsumer(bufferSource.getBuffer(renderType), faceCount);
+    }
+
+    /**
+     * Pushes every vertex of the model through the vertex kernel once, used by the benchmark command.
+     * @param consumer Either the builder itself, for the bulk path, or another consumer, for the per vertex path
+     * @return The amount of vertices pushed
+     */
+    public int benchmarkVertices(BufferBuilder builder, VertexConsumer consumer) {
+        //rotated and tinted, so every attribute goes through the transforms
+        PartCustomization customization = PartCustomization.of();
+        customization.positionMatrix.rotateY(30);
+        customization.normalMatrix.rotateY(30);
+        customization.color.set(1, 0.5, 0.5);
+        customization.alpha = 1f;
+        customization.light = LightTexture.FULL_BRIGHT;
+        customization.overlay = OverlayTexture.NO_OVERLAY;
+        customization.visible = true;
+        customizationStack.push(customization);
+        customization.free();
+
+        int vertices = 0;
+        builder.begin(VertexFormat.Mode.QUADS, DefaultVertexFormat.NEW_ENTITY);
+        for (FiguraImmediateBuffer buffer : buffers) {
+            buffer.clearBuffers();
+            int faces = buffer.getVertexCount() / 4;
+            buffer.pushToConsumer(consumer, faces);
+            vertices += faces * 4;
+        }
+        builder.end().release();
+
+        customizationStack.pop();
+        checkEmpty();
+        return vertices;
+    }
+
+    /**
+     * Called once all parts were rendered, for anything emitFaces delayed.
+     */
+    protected void flushFaces() {}
+
     public void advanceFaces(int texIndex, int faceCount) {
         buffers.get(texIndex).advanceBuffers(faceCount);
     }
@@ -0,0 +1,76 @@
+package org.moon.figura.model.rendering;
+
+import com.mojang.blaze3d.vertex.PoseStack;
+import org.lwjgl.BufferUtils;
+import org.moon.figura.math.matrix.FiguraMat3;
+import org.moon.figura.math.matrix.FiguraMat4;
+import org.moon.figura.model.PartCustomization;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Stores the pivot part transforms of a single parent type for one frame,
+ * as flat float slots in the same column-major layout vanilla matrices load from.
+ * The slots are kept between frames, so saving transforms does not allocate.
+ */
+public class PivotTransformBuffer {
+
+    //4x4 position matrix + 3x3 normal matrix
+    private static final int SLOT_SIZE = 16 + 9;
+    //limit of 1000 pivot part renders, just in case something goes infinitely somehow
+    public static final int MAX_TRANSFORMS = 1000;
+
+    private static final FloatBuffer POSITION_BUFFER = BufferUtils.createFloatBuffer(16);
+    private static final FloatBuffer NORMAL_BUFFER = BufferUtils.createFloatBuffer(9);
+
+    private float[] data = new float[SLOT_SIZE * 8];
+    private int size;
+
+    public void add(FiguraMat4 pos, FiguraMat3 normal) {
+        if (size >= MAX_TRANSFORMS)
+            return;
+
+        int capacity = data.length / SLOT_SIZE;
+        if (size >= capacity)
+            data = Arrays.copyOf(data, Math.min(capacity * 2, MAX_TRANSFORMS) * SLOT_SIZE);
+
+        float[] d = data;
+        int i = size++ * SLOT_SIZE;
+
+        d[i] = (float) pos.v11; d[i + 1] = (float) pos.v21; d[i + 2] = (float) pos.v31; d[i + 3] = (float) pos.v41;
+        d[i + 4] = (float) pos.v12; d[i + 5] = (float) pos.v22; d[i + 6] = (float) pos.v32; d[i + 7] = (float) pos.v42;
+        d[i + 8] = (float) pos.v13; d[i + 9] = (float) pos.v23; d[i + 10] = (float) pos.v33; d[i + 11] = (float) pos.v43;
+        d[i + 12] = (float) pos.v14; d[i + 13] = (float) pos.v24; d[i + 14] = (float) pos.v34; d[i + 15] = (float) pos.v44;
+
+        d[i + 16] = (float) normal.v11; d[i + 17] = (float) normal.v21; d[i + 18] = (float) normal.v31;
+        d[i + 19] = (float) normal.v12; d[i + 20] = (float) normal.v22; d[i + 21] = (float) normal.v32;
+        d[i + 22] = (float) normal.v13; d[i + 23] = (float) normal.v23; d[i + 24] = (float) normal.v33;
+    }
+
+    /**
+     * Loads the transform at the given index into the global customization pose stack.
+     */
+    public PoseStack load(int index) {
+        int i = index * SLOT_SIZE;
+        POSITION_BUFFER.put(0, data, i, 16);
+        NORMAL_BUFFER.put(0, data, i + 16, 9);
+
+        PoseStack stack = PartCustomization.GLOBAL_CUSTOMIZATION_POSE_STACK;
+        stack.last().pose().load(POSITION_BUFFER);
+        stack.last().normal().load(NORMAL_BUFFER);
+        return stack;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
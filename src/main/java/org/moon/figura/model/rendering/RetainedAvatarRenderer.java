@@ -0,0 +1,247 @@
+package org.moon.figura.model.rendering;
+
+import com.mojang.blaze3d.platform.GlStateManager;
+import com.mojang.blaze3d.systems.RenderSystem;
+import com.mojang.blaze3d.vertex.BufferBuilder;
+import com.mojang.blaze3d.vertex.DefaultVertexFormat;
+import com.mojang.blaze3d.vertex.VertexBuffer;
+import com.mojang.blaze3d.vertex.VertexFormat;
+import com.mojang.math.Matrix4f;
+import com.mojang.math.Vector3f;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import net.minecraft.client.renderer.RenderType;
+import net.minecraft.client.renderer.ShaderInstance;
+import org.lwjgl.opengl.GL30;
+import org.moon.figura.avatar.Avatar;
+import org.moon.figura.math.matrix.FiguraMat3;
+import org.moon.figura.mixin.render.RenderSystemAccessor;
+import org.moon.figura.model.PartCustomization;
+import org.moon.figura.model.rendering.texture.FiguraTexture;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renderer which keeps the static geometry of each part in GPU vertex buffers,
+ * so each frame only the part matrices, color, light and overlay are sent to the shader.
+ * Draws are grouped by render type, and drawn together once the whole model was visited.
+ * Anything it is not able to draw retained goes through the immediate path instead.
+ */
+public class RetainedAvatarRenderer extends ImmediateAvatarRenderer {
+
+    private static final BufferBuilder BUILDER = new BufferBuilder(256);
+
+    //the overlay and light attributes are not read from the buffers, but set as constants for each draw
+    private static final int OVERLAY_ATTRIBUTE = DefaultVertexFormat.NEW_ENTITY.getElements().indexOf(DefaultVertexFormat.ELEMENT_UV1);
+    private static final int LIGHT_ATTRIBUTE = DefaultVertexFormat.NEW_ENTITY.getElements().indexOf(DefaultVertexFormat.ELEMENT_UV2);
+
+    //how far from orthonormal a normal matrix can be, for the lights to be moved into part space
+    private static final double NORMAL_EPSILON = 1e-4;
+
+    //buffer -> (first vertex -> mesh)
+    private final Map<FiguraImmediateBuffer, Int2ObjectMap<RetainedMesh>> meshes = new HashMap<>();
+
+    //draws of the current render, grouped by render type, so its state is only set up once
+    private final Map<RenderType, List<RetainedDraw>> draws = new LinkedHashMap<>();
+    //draws from previous renders, reused so rendering does not allocate
+    private final List<RetainedDraw> freeDraws = new ArrayList<>();
+
+    //scratch objects used while drawing
+    private final Matrix4f modelView = new Matrix4f();
+    private final Vector3f partLight0 = new Vector3f(), partLight1 = new Vector3f();
+
+    public RetainedAvatarRenderer(Avatar avatar, Map<String, FiguraTexture> textures) {
+        super(avatar, textures);
+    }
+
+    @Override
+    protected void clean() {
+        super.clean();
+        for (Int2ObjectMap<RetainedMesh> map : meshes.values()) {
+            for (RetainedMesh mesh : map.values())
+                mesh.close();
+        }
+        meshes.clear();
+        draws.clear();
+        freeDraws.clear();
+    }
+
+    @Override
+    public void emitFaces(FiguraImmediateBuffer buffer, RenderType renderType, int faceCount) {
+        PartCustomization customization = customizationStack.peek();
+
+        //outlines and translucent entities need the vanilla batching, as well as any non-entity format
+        //scaled normals need to be transformed per vertex, as it is not possible to move the lights instead
+        if (translucent || glowing || renderType.format() != DefaultVertexFormat.NEW_ENTITY || renderType.mode() != VertexFormat.Mode.QUADS || !isOrthonormal(customization.normalMatrix)) {
+            super.emitFaces(buffer, renderType, faceCount);
+            return;
+        }
+
+        RetainedMesh mesh = meshes.computeIfAbsent(buffer, b -> new Int2ObjectOpenHashMap<>()).computeIfAbsent(buffer.getVertexOffset(), i -> new RetainedMesh());
+
+        //only upload again when the baked vertex data changed
+        if (mesh.matches(buffer, faceCount, customization))
+            buffer.advanceBuffers(faceCount);
+        else
+            mesh.upload(buffer, faceCount, customization);
+
+        RetainedDraw draw = freeDraws.isEmpty() ? new RetainedDraw() : freeDraws.remove(freeDraws.size() - 1);
+        draw.set(mesh, customization);
+        draws.computeIfAbsent(renderType, type -> new ArrayList<>()).add(draw);
+    }
+
+    private static boolean isOrthonormal(FiguraMat3 m) {
+        //columns must be unit length and perpendicular to each other
+        return Math.abs(m.v11 * m.v11 + m.v21 * m.v21 + m.v31 * m.v31 - 1) < NORMAL_EPSILON &&
+                Math.abs(m.v12 * m.v12 + m.v22 * m.v22 + m.v32 * m.v32 - 1) < NORMAL_EPSILON &&
+                Math.abs(m.v13 * m.v13 + m.v23 * m.v23 + m.v33 * m.v33 - 1) < NORMAL_EPSILON &&
+                Math.abs(m.v11 * m.v12 + m.v21 * m.v22 + m.v31 * m.v32) < NORMAL_EPSILON &&
+                Math.abs(m.v11 * m.v13 + m.v21 * m.v23 + m.v31 * m.v33) < NORMAL_EPSILON &&
+                Math.abs(m.v12 * m.v13 + m.v22 * m.v23 + m.v32 * m.v33) < NORMAL_EPSILON;
+    }
+
+    @Override
+    protected void flushFaces() {
+        if (draws.isEmpty())
+            return;
+
+        //saved to be restored after all draws
+        Vector3f[] lights = RenderSystemAccessor.getShaderLightDirections();
+        Vector3f light0 = lights[0].copy();
+        Vector3f light1 = lights[1].copy();
+        float[] color = RenderSystem.getShaderColor();
+        float r = color[0], g = color[1], b = color[2], a = color[3];
+        Matrix4f viewMatrix = RenderSystem.getModelViewMatrix();
+
+        for (Map.Entry<RenderType, List<RetainedDraw>> entry : draws.entrySet()) {
+            List<RetainedDraw> list = entry.getValue();
+            if (list.isEmpty())
+                continue;
+
+            RenderType renderType = entry.getKey();
+            renderType.setupRenderState();
+            ShaderInstance shader = RenderSystem.getShader();
+            for (RetainedDraw draw : list) {
+                draw(draw, viewMatrix, light0, light1, shader);
+                draw.mesh = null;
+                freeDraws.add(draw);
+            }
+            VertexBuffer.unbind();
+            renderType.clearRenderState();
+
+            list.clear();
+        }
+
+        //restore
+        RenderSystem.setShaderColor(r, g, b, a);
+        RenderSystem.setShaderLights(light0, light1);
+    }
+
+    private void draw(RetainedDraw draw, Matrix4f viewMatrix, Vector3f light0, Vector3f light1, ShaderInstance shader) {
+        VertexBuffer vertexBuffer = draw.mesh.vertexBuffer;
+        if (vertexBuffer == null)
+            return;
+
+        //model view
+        modelView.load(viewMatrix);
+        modelView.multiply(draw.pose);
+
+        //the shaders do not transform normals, so move the lights into part space instead
+        //exact only for orthonormal normal matrices, which is checked before
+        transposeTransform(draw.normal, light0, partLight0);
+        transposeTransform(draw.normal, light1, partLight1);
+        RenderSystem.setShaderLights(partLight0, partLight1);
+
+        RenderSystem.setShaderColor(draw.r, draw.g, draw.b, draw.a);
+
+        vertexBuffer.bind();
+        GL30.glVertexAttribI2i(OVERLAY_ATTRIBUTE, draw.overlay & 0xFFFF, draw.overlay >> 16 & 0xFFFF);
+        GL30.glVertexAttribI2i(LIGHT_ATTRIBUTE, draw.light & 0xFFFF, draw.light >> 16 & 0xFFFF);
+        vertexBuffer.drawWithShader(modelView, RenderSystem.getProjectionMatrix(), shader);
+    }
+
+    private static void transposeTransform(float[] m, Vector3f vec, Vector3f result) {
+        float x = vec.x(), y = vec.y(), z = vec.z();
+        result.set(
+                m[0] * x + m[3] * y + m[6] * z,
+                m[1] * x + m[4] * y + m[7] * z,
+                m[2] * x + m[5] * y + m[8] * z
+        );
+    }
+
+    private static class RetainedDraw {
+
+        private final Matrix4f pose = new Matrix4f();
+        //row major normal matrix
+        private final float[] normal = new float[9];
+        private RetainedMesh mesh;
+        private float r, g, b, a;
+        private int light, overlay;
+
+        private void set(RetainedMesh mesh, PartCustomization customization) {
+            this.mesh = mesh;
+            customization.positionMatrix.copyDataTo(pose);
+
+            FiguraMat3 n = customization.normalMatrix;
+            normal[0] = (float) n.v11; normal[1] = (float) n.v12; normal[2] = (float) n.v13;
+            normal[3] = (float) n.v21; normal[4] = (float) n.v22; normal[5] = (float) n.v23;
+            normal[6] = (float) n.v31; normal[7] = (float) n.v32; normal[8] = (float) n.v33;
+
+            this.r = (float) customization.color.x;
+            this.g = (float) customization.color.y;
+            this.b = (float) customization.color.z;
+            this.a = customization.alpha;
+            this.light = customization.light;
+            this.overlay = customization.overlay;
+        }
+    }
+
+    private static class RetainedMesh {
+
+        private VertexBuffer vertexBuffer;
+        private final FiguraMat3 uvMatrix = FiguraMat3.of();
+        private int faceCount = -1;
+        private int version;
+
+        //light and overlay are not part of the mesh, so they can change without uploading it again
+        public boolean matches(FiguraImmediateBuffer buffer, int faceCount, PartCustomization customization) {
+            return vertexBuffer != null &&
+                    this.version == buffer.getVersion() &&
+                    this.faceCount == faceCount &&
+                    this.uvMatrix.equals(customization.uvMatrix);
+        }
+
+        public void upload(FiguraImmediateBuffer buffer, int faceCount, PartCustomization customization) {
+            BUILDER.begin(VertexFormat.Mode.QUADS, DefaultVertexFormat.NEW_ENTITY);
+            buffer.pushLocalToConsumer(BUILDER, faceCount, customization);
+
+            if (vertexBuffer == null)
+                vertexBuffer = new VertexBuffer();
+
+            vertexBuffer.bind();
+            vertexBuffer.upload(BUILDER.end());
+
+            //the disabled arrays are part of the vertex array state, so the constant values are read instead
+            GlStateManager._disableVertexAttribArray(OVERLAY_ATTRIBUTE);
+            GlStateManager._disableVertexAttribArray(LIGHT_ATTRIBUTE);
+            VertexBuffer.unbind();
+
+            this.version = buffer.getVersion();
+            this.faceCount = faceCount;
+            this.uvMatrix.set(customization.uvMatrix);
+        }
+
+        public void close() {
+            uvMatrix.free();
+            if (vertexBuffer != null) {
+                VertexBuffer buffer = vertexBuffer;
+                RenderSystem.recordRenderCall(buffer::close);
+                vertexBuffer = null;
+            }
+        }
+    }
+}
@@ -1,10 +1,15 @@
 package org.moon.figura.model.rendering.texture;
 
+import org.luaj.vm2.LuaString;
+
 public enum EntityRenderMode {
     FIGURA_GUI,
     PAPERDOLL,
     MINECRAFT_GUI,
     FIRST_PERSON,
     RENDER,
-    OTHER
-}
\ No newline at end of file
+    OTHER;
+
+    //cached for the render events
+    public final LuaString luaName = LuaString.valueOf(name());
+}
@@ -57,29 +57,34 @@ public class FiguraTexture extends AbstractTexture implements Closeable {
     private boolean isClosed = false;
 
     public FiguraTexture(Avatar owner, String name, byte[] data) {
+        this(owner, name, readImage(data), false);
+    }
+
+    public FiguraTexture(Avatar owner, String name, NativeImage image) {
+        this(owner, name, image, true);
+    }
+
+    /**
+     * @param custom If the texture was created by a script, instead of loaded with the avatar
+     */
+    public FiguraTexture(Avatar owner, String name, NativeImage image, boolean custom) {
+        this.texture = image;
+        this.textureID = new FiguraIdentifier("avatar_tex/" + owner.owner + (custom ? "/custom/" : "/") + UUID.randomUUID());
+        this.name = name;
+        this.owner = owner;
+    }
+
+    public static NativeImage readImage(byte[] data) {
         //Read image from wrapper
-        NativeImage image;
         try {
             ByteBuffer wrapper = BufferUtils.createByteBuffer(data.length);
             wrapper.put(data);
             wrapper.rewind();
-            image = NativeImage.read(wrapper);
+            return NativeImage.read(wrapper);
         } catch (IOException e) {
             FiguraMod.LOGGER.error("", e);
-            image = new NativeImage(1, 1, true);
+            return new NativeImage(1, 1, true);
         }
-
-        this.texture = image;
-        this.textureID = new FiguraIdentifier("avatar_tex/" + owner.owner + "/" + UUID.randomUUID());
-        this.name = name;
-        this.owner = owner;
-    }
-
-    public FiguraTexture(Avatar owner, String name, NativeImage image) {
-        this.texture = image;
-        this.textureID = new FiguraIdentifier("avatar_tex/" + owner.owner + "/custom/" + UUID.randomUUID());
-        this.name = name;
-        this.owner = owner;
     }
 
     @Override
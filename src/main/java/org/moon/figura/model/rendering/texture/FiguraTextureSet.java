@@ -3,15 +3,34 @@ package org.moon.figura.model.rendering.texture;
 import com.mojang.datafixers.util.Pair;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.multiplayer.PlayerInfo;
+import net.minecraft.client.renderer.RenderType;
 import net.minecraft.client.renderer.texture.MissingTextureAtlasSprite;
 import net.minecraft.resources.ResourceLocation;
 import org.moon.figura.mixin.render.layers.elytra.ElytraLayerAccessor;
+import org.moon.figura.utils.FiguraResourceListener;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
 
 public class FiguraTextureSet {
+
+    //resource packs may add or remove textures, so the resolved render types must be invalidated on reloads
+    private static int resourceGeneration = 0;
+    public static final FiguraResourceListener RESOURCE_LISTENER = new FiguraResourceListener("texture_sets", manager -> resourceGeneration++);
+
     public final FiguraTexture mainTex, emissiveTex;
 
+    //render types by override type, then by render types and flags, so a lookup never allocates
+    private static final int RENDER_TYPE_SLOTS = (RenderTypes.values().length + 1) * 4;
+    private final CachedRenderType[][] renderTypeCache = new CachedRenderType[OverrideType.values().length + 1][];
+    //overrides with an argument are also keyed by it
+    private final Map<Object, CachedRenderType[]> resourceCache = new HashMap<>();
+    private final Map<Object, CachedRenderType[]> customCache = new HashMap<>();
+    private int cacheGeneration = resourceGeneration;
+
     public FiguraTextureSet(FiguraTexture mainData, FiguraTexture emissiveData) {
         mainTex = mainData;
         emissiveTex = emissiveData;
@@ -49,6 +68,71 @@ public class FiguraTextureSet {
             return -1;
     }
 
+    /**
+     * Clears the resolved render types, forcing them to be resolved again on the next render.
+     */
+    private void invalidateRenderTypes() {
+        Arrays.fill(renderTypeCache, null);
+        resourceCache.clear();
+        customCache.clear();
+    }
+
+    /**
+     * Gets the render type for the given texture override, resolving it only when it is not cached.
+     */
+    public RenderType getRenderType(UUID owner, Pair<OverrideType, Object> texture, RenderTypes types, boolean translucent, boolean glowing) {
+        if (types == RenderTypes.NONE)
+            return null;
+
+        if (cacheGeneration != resourceGeneration) {
+            invalidateRenderTypes();
+            cacheGeneration = resourceGeneration;
+        }
+
+        OverrideType type = texture == null ? null : texture.getFirst();
+        CachedRenderType[] row = getCacheRow(type, texture == null ? null : texture.getSecond());
+        int slot = ((types == null ? 0 : types.ordinal() + 1) << 2) | (translucent ? 2 : 0) | (glowing ? 1 : 0);
+        CachedRenderType cached = row[slot];
+
+        //player textures may still be downloading, so only the render type is cached for them
+        boolean playerTexture = type == OverrideType.SKIN || type == OverrideType.CAPE || type == OverrideType.ELYTRA;
+        if (cached != null && !playerTexture)
+            return cached.renderType;
+
+        ResourceLocation id = getOverrideTexture(owner, texture);
+        if (cached != null && Objects.equals(cached.id, id))
+            return cached.renderType;
+
+        RenderType renderType = createRenderType(id, types, translucent, glowing);
+        row[slot] = new CachedRenderType(id, renderType);
+        return renderType;
+    }
+
+    private CachedRenderType[] getCacheRow(OverrideType type, Object argument) {
+        if (type == OverrideType.RESOURCE)
+            return resourceCache.computeIfAbsent(argument, arg -> new CachedRenderType[RENDER_TYPE_SLOTS]);
+        if (type == OverrideType.CUSTOM)
+            return customCache.computeIfAbsent(argument, arg -> new CachedRenderType[RENDER_TYPE_SLOTS]);
+
+        //the other overrides do not use their argument
+        int index = type == null ? 0 : type.ordinal() + 1;
+        CachedRenderType[] row = renderTypeCache[index];
+        if (row == null)
+            row = renderTypeCache[index] = new CachedRenderType[RENDER_TYPE_SLOTS];
+        return row;
+    }
+
+    private static RenderType createRenderType(ResourceLocation id, RenderTypes types, boolean translucent, boolean glowing) {
+        if (id != null) {
+            if (translucent)
+                return RenderType.itemEntityTranslucentCull(id);
+            if (glowing)
+                return RenderType.outline(id);
+        }
+
+        return types == null ? null : types.get(id);
+    }
+
     public ResourceLocation getOverrideTexture(UUID owner, Pair<OverrideType, Object> pair) {
         OverrideType type;
 
@@ -90,6 +174,8 @@ public class FiguraTextureSet {
         };
     }
 
+    private record CachedRenderType(ResourceLocation id, RenderType renderType) {}
+
     public enum OverrideType {
         SKIN,
         CAPE,
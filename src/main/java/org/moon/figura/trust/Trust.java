@@ -31,6 +31,7 @@ public class Trust {
             VANILLA_MODEL_EDIT = new Trust("VANILLA_MODEL_EDIT", 0, 0, 1, 1, 1),
             NAMEPLATE_EDIT = new Trust("NAMEPLATE_EDIT", 0, 0, 1, 1, 1),
             OFFSCREEN_RENDERING = new Trust("OFFSCREEN_RENDERING", 0, 0, 1, 1, 1),
+            LOD_DISTANCE = new Trust("LOD_DISTANCE", 0, 256, 16, 16, 32, 64, Integer.MAX_VALUE, Integer.MAX_VALUE),
             //CUSTOM_RENDER_LAYER = new Trust("CUSTOM_RENDER_LAYER", List.of(0, 0, 1, 1, 1)),
             CUSTOM_SOUNDS = new Trust("CUSTOM_SOUNDS", 0, 0, 1, 1, 1),
             CUSTOM_HEADS = new Trust("CUSTOM_HEADS", 0, 0, 1, 1, 1);
@@ -50,6 +51,7 @@ public class Trust {
             VANILLA_MODEL_EDIT,
             NAMEPLATE_EDIT,
             OFFSCREEN_RENDERING,
+            LOD_DISTANCE,
             CUSTOM_SOUNDS,
             CUSTOM_HEADS
     );
@@ -17,8 +17,20 @@ import org.moon.figura.math.vector.FiguraVec3;
 import org.moon.figura.math.vector.FiguraVec4;
 import org.moon.figura.math.vector.FiguraVec6;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 public class LuaUtils {
 
+    //parsed item and block strings, shared by all avatars
+    private static final int MAX_PARSED_ENTRIES = 256;
+    private static final Map<String, ItemStack> PARSED_ITEMS = Collections.synchronizedMap(createParseCache());
+    private static final Map<String, BlockState> PARSED_BLOCKS = Collections.synchronizedMap(createParseCache());
+    private static CommandBuildContext buildContext;
+
+    public static final FiguraResourceListener PARSE_CACHE_LISTENER = new FiguraResourceListener("parse_cache", manager -> clearParseCache());
+
     public static FiguraVec4 parseVec4(String methodName, Object x, Number y, Number z, Number w, double defaultX, double defaultY, double defaultZ, double defaultW) {
         if (x instanceof FiguraVec3 vec)
             return FiguraVec4.of(vec.x, vec.y, vec.z, defaultW);
@@ -113,11 +125,7 @@ public class LuaUtils {
         else if (item instanceof ItemStackAPI wrapper)
             return wrapper.itemStack;
         else if (item instanceof String string) {
-            try {
-                return ItemArgument.item(new CommandBuildContext(RegistryAccess.BUILTIN.get())).parse(new StringReader(string)).createItemStack(1, false);
-            } catch (Exception e) {
-                throw new LuaError("Could not parse item stack from string: " + string);
-            }
+            return itemFromString(string);
         }
 
         throw new LuaError("Illegal argument to " + methodName + "(): " + item);
@@ -129,13 +137,68 @@ public class LuaUtils {
         else if (block instanceof BlockStateAPI wrapper)
             return wrapper.blockState;
         else if (block instanceof String string) {
+            return blockFromString(string);
+        }
+
+        throw new LuaError("Illegal argument to " + methodName + "(): " + block);
+    }
+
+    // -- parse cache -- //
+
+    /**
+     * Parses an item stack the same way as the item command argument, reusing previously parsed strings.
+     * @return a new copy of the parsed item stack, free to be modified
+     */
+    public static ItemStack itemFromString(String string) {
+        ItemStack item = PARSED_ITEMS.get(string);
+        if (item == null) {
             try {
-                return BlockStateArgument.block(new CommandBuildContext(RegistryAccess.BUILTIN.get())).parse(new StringReader(string)).getState();
+                item = ItemArgument.item(getBuildContext()).parse(new StringReader(string)).createItemStack(1, false);
+            } catch (Exception e) {
+                throw new LuaError("Could not parse item stack from string: " + string);
+            }
+            PARSED_ITEMS.put(string, item);
+        }
+
+        return item.copy();
+    }
+
+    /**
+     * Parses a block state the same way as the block command argument, reusing previously parsed strings.
+     */
+    public static BlockState blockFromString(String string) {
+        BlockState block = PARSED_BLOCKS.get(string);
+        if (block == null) {
+            try {
+                block = BlockStateArgument.block(getBuildContext()).parse(new StringReader(string)).getState();
             } catch (Exception e) {
                 throw new LuaError("Could not parse block state from string: " + string);
             }
+            PARSED_BLOCKS.put(string, block);
         }
 
-        throw new LuaError("Illegal argument to " + methodName + "(): " + block);
+        return block;
+    }
+
+    private static synchronized CommandBuildContext getBuildContext() {
+        if (buildContext == null)
+            buildContext = new CommandBuildContext(RegistryAccess.BUILTIN.get());
+        return buildContext;
+    }
+
+    private static synchronized void clearParseCache() {
+        buildContext = null;
+        PARSED_ITEMS.clear();
+        PARSED_BLOCKS.clear();
+    }
+
+    //least recently used entries are dropped first
+    private static <T> Map<String, T> createParseCache() {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, T> eldest) {
+                return size() > MAX_PARSED_ENTRIES;
+            }
+        };
     }
 }
@@ -1,6 +1,6 @@
 package org.moon.figura.utils.caching;
 
-import java.util.LinkedList;
+import java.util.ArrayDeque;
 import java.util.Queue;
 import java.util.function.Supplier;
 
@@ -17,7 +17,8 @@ public class CacheUtils {
     }
 
     public static class Cache<T extends CachedType> {
-        private final Queue<T> cache;
+        //one pool per thread, as scripts may be ticked in parallel
+        private final ThreadLocal<Queue<T>> cache;
         private final Supplier<T> generator;
         private final int maxSize;
 
@@ -26,13 +27,13 @@ public class CacheUtils {
         }
 
         private Cache(Supplier<T> generator, int maxSize) {
-            cache = new LinkedList<>();
+            cache = ThreadLocal.withInitial(ArrayDeque::new);
             this.generator = generator;
             this.maxSize = maxSize;
         }
 
         public T getFresh() {
-            T result = cache.poll();
+            T result = cache.get().poll();
             if (result == null)
                 result = generator.get();
             result.reset();
@@ -40,9 +41,10 @@ public class CacheUtils {
         }
 
         public void offerOld(T old) {
-            if (cache.size() >= maxSize)
+            Queue<T> queue = cache.get();
+            if (queue.size() >= maxSize)
                 return;
-            cache.offer(old);
+            queue.offer(old);
         }
     }
 }